@@ -177,6 +177,11 @@ public abstract class DriveProvider {
     }
 
 
+    public int getMaxConnections() {
+        return 4;
+    }
+
+
     public long getUsedSpace() {
 
         MergeStorage storage = ((MergeFileSystem) FileSystems
@@ -188,7 +193,10 @@ public abstract class DriveProvider {
                 .collect(Collectors.toList())
                 .stream()
                 .filter(i -> i.getDriveProvider().equals(this))
-                .mapToLong(MergeChunk::getSize)
+                .collect(Collectors.toMap(MergeChunk::getDataId, MergeChunk::getSize, (a, b) -> a))
+                .values()
+                .stream()
+                .mapToLong(Long::longValue)
                 .sum();
 
     }
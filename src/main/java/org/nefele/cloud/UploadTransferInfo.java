@@ -26,6 +26,7 @@ package org.nefele.cloud;
 
 import javafx.application.Platform;
 import org.nefele.Application;
+import org.nefele.fs.MergeCache;
 import org.nefele.fs.MergeChunk;
 import org.nefele.fs.MergePath;
 import org.nefele.ui.scenes.Status;
@@ -47,48 +48,58 @@ public class UploadTransferInfo extends TransferInfo {
         this.localFile = localFile;
     }
 
+    public UploadTransferInfo(MergePath path) {
+        this(path, null);
+    }
+
 
     @Override
     public Integer execute() {
 
-        setSize(localFile.length());
         setStatus(TRANSFER_STATUS_READY);
 
 
-        Application.log(getClass(), "Prepare UploadTransferInfo() for %s (size: %d)", getPath().toString(), getSize());
+        if(localFile != null) {
 
-        try {
+            setSize(localFile.length());
+
+
+            Application.log(getClass(), "Prepare UploadTransferInfo() for %s (size: %d)", getPath().toString(), getSize());
+
+            try {
 
-            Files.createFile(getPath());
+                Files.createFile(getPath());
 
-            try(var writer = Files.newOutputStream(getPath())) {
-                try (var reader = Files.newInputStream(localFile.toPath())) {
+                try(var writer = Files.newOutputStream(getPath())) {
+                    try (var reader = Files.newInputStream(localFile.toPath())) {
 
-                    while (reader.available() > 0)
-                        writer.write(reader.readNBytes((int) MergeChunk.getDefaultSize()));
+                        while (reader.available() > 0)
+                            writer.write(reader.readNBytes((int) MergeChunk.getDefaultSize()));
 
+                    }
+
+                    writer.flush();
                 }
 
-                writer.flush();
-            }
 
+            } catch (Exception e) {
 
-        } catch (Exception e) {
+                Application.log(getClass(), e, "Something wrong, preparing canceled for %s", localFile.getAbsolutePath());
 
-            Application.log(getClass(), e, "Something wrong, preparing canceled for %s", localFile.getAbsolutePath());
+                if(e instanceof DriveNotFoundException) {
+                    Application.getInstance().getStatus()
+                            .updateMessage(Status.ICON_ALERT, "STATUS_DRIVE_EMPTY");
 
-            if(e instanceof DriveNotFoundException) {
-                Application.getInstance().getStatus()
-                        .updateMessage(Status.ICON_ALERT, "STATUS_DRIVE_EMPTY");
+                } else {
+                    Application.getInstance().getStatus()
+                            .updateMessage(Status.ICON_ALERT, "STATUS_TRANSFER_ERROR", getName());
 
-            } else {
-                Application.getInstance().getStatus()
-                        .updateMessage(Status.ICON_ALERT, "STATUS_TRANSFER_ERROR", getName());
+                }
 
-            }
+                setStatus(TRANSFER_STATUS_ERROR);
+                return getStatus();
 
-            setStatus(TRANSFER_STATUS_ERROR);
-            return getStatus();
+            }
 
         }
 
@@ -120,12 +131,13 @@ public class UploadTransferInfo extends TransferInfo {
 
 
 
-            if (!getFileSystem().getStorage().isCached(chunk)) {
+            if (!getFileSystem().getStorage().getCache()
+                    .setState(chunk, MergeCache.CACHE_STATE_DIRTY, MergeCache.CACHE_STATE_UPLOADING)) {
 
-                Application.log(getClass(), "WARNING! chunk %s is not cached, something wrong!", chunk.getId());
+                Application.log(getClass(), "Chunk %s already stored as %s, skipping upload", chunk.getId(), chunk.getDataId());
 
-                setStatus(TRANSFER_STATUS_ERROR);
-                return getStatus();
+                Platform.runLater(() -> setProgress(getProgress() + chunk.getSize()));
+                continue;
 
             }
 
@@ -148,6 +160,10 @@ public class UploadTransferInfo extends TransferInfo {
 
                     });
 
+
+                    getFileSystem().getStorage().getCache()
+                            .setState(chunk, MergeCache.CACHE_STATE_UPLOADING, MergeCache.CACHE_STATE_CLEAN);
+
                     break;
 
                 } catch (TransferInfoTryAgainException e) {
@@ -157,6 +173,9 @@ public class UploadTransferInfo extends TransferInfo {
 
                     Application.log(getClass(), e, "Something wrong, transfer canceled for %s", chunk.getId());
 
+                    getFileSystem().getStorage().getCache()
+                            .setState(chunk, MergeCache.CACHE_STATE_UPLOADING, MergeCache.CACHE_STATE_DIRTY);
+
 
                     if(e instanceof DriveFullException) {
                         Application.getInstance().getStatus()
@@ -180,7 +199,7 @@ public class UploadTransferInfo extends TransferInfo {
 
         try {
 
-            if (getStatus() == TRANSFER_STATUS_CANCELED)
+            if (getStatus() == TRANSFER_STATUS_CANCELED && localFile != null)
                 Files.delete(getPath());  /* FIXME: delete() destroy everything including your machine */
 
         } catch (Exception e) {
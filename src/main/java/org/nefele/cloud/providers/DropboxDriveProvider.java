@@ -91,7 +91,7 @@ public class DropboxDriveProvider extends DriveProvider {
         try {
 
             UploadUploader dbxUploader = driveService.files()
-                    .uploadBuilder("/" + chunk.getId())
+                    .uploadBuilder("/" + chunk.getDataId())
                     .withClientModified(Date.from(
                             Instant.ofEpochMilli(chunk.getRevision())))
                     .start();
@@ -132,7 +132,7 @@ public class DropboxDriveProvider extends DriveProvider {
         try {
 
             DbxDownloader<FileMetadata> dbxDownloader = driveService.files()
-                    .download("/" + chunk.getId());
+                    .download("/" + chunk.getDataId());
 
             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(
                     (int) dbxDownloader.getResult().getSize());
@@ -176,7 +176,7 @@ public class DropboxDriveProvider extends DriveProvider {
 
             driveService
                     .files()
-                    .deleteV2("/" + chunk.getId());
+                    .deleteV2("/" + chunk.getDataId());
 
         } catch (RateLimitException | NetworkIOException e) {
             throw new TransferInfoTryAgainException("Too many request, waiting a bit and try again...", 500, TimeUnit.MILLISECONDS);
@@ -194,7 +194,7 @@ public class DropboxDriveProvider extends DriveProvider {
 
             long updatedRev = driveService
                     .files()
-                    .download("/" + chunk.getId())
+                    .download("/" + chunk.getDataId())
                     .getResult()
                     .getClientModified()
                         .toInstant()
@@ -164,7 +164,7 @@ public class GoogleDriveProvider extends DriveProvider {
             final var id = findChunk(chunk);
 
             if (id == null)
-                throw new NoSuchFileException(chunk.getId());
+                throw new NoSuchFileException(chunk.getDataId());
 
 
             try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream() {
@@ -200,7 +200,7 @@ public class GoogleDriveProvider extends DriveProvider {
             final var id = findChunk(chunk);
 
             if (id == null)
-                throw new NoSuchFileException(chunk.getId());
+                throw new NoSuchFileException(chunk.getDataId());
 
             else {
                 driveService.files()
@@ -223,7 +223,7 @@ public class GoogleDriveProvider extends DriveProvider {
             final var id = findChunk(chunk);
 
             if (id == null)
-                throw new NoSuchFileException(chunk.getId());
+                throw new NoSuchFileException(chunk.getDataId());
 
             else {
 
@@ -347,7 +347,7 @@ public class GoogleDriveProvider extends DriveProvider {
 
             return driveService.files()
                     .list()
-                    .setQ("name = '" + chunk.getId() + "'")
+                    .setQ("name = '" + chunk.getDataId() + "'")
                     .setPageSize(1)
                     .setSpaces("appDataFolder")
                     .execute()
@@ -368,7 +368,7 @@ public class GoogleDriveProvider extends DriveProvider {
 
             return driveService.files().create(
                     new File()
-                            .setName(chunk.getId())
+                            .setName(chunk.getDataId())
                             .setParents(Collections.singletonList("appDataFolder"))
                             .setDescription("Nefele Chunk")
                             .setProperties(Collections.singletonMap("revision", Long.toUnsignedString(System.nanoTime())))
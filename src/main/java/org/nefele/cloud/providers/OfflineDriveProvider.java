@@ -60,7 +60,7 @@ public class OfflineDriveProvider extends DriveProvider {
     @Override
     public void writeChunk(MergeChunk chunk, InputStream inputStream, TransferInfoCallback callback) throws TransferInfoException {
 
-        try (OutputStream outputStream = Files.newOutputStream(drivePath.resolve(chunk.getId()))) {
+        try (OutputStream outputStream = Files.newOutputStream(drivePath.resolve(chunk.getDataId()))) {
 
             while (inputStream.available() > 0) {
 
@@ -83,7 +83,7 @@ public class OfflineDriveProvider extends DriveProvider {
             }
 
 
-            Files.writeString(drivePath.resolve(chunk.getId() + ".rev"), Long.toUnsignedString(chunk.getRevision()));
+            Files.writeString(drivePath.resolve(chunk.getDataId() + ".rev"), Long.toUnsignedString(chunk.getRevision()));
 
         } catch (Exception e) {
             throw new TransferInfoAbortException(e.getMessage());
@@ -95,7 +95,7 @@ public class OfflineDriveProvider extends DriveProvider {
     @Override
     public ByteBuffer readChunk(MergeChunk chunk, TransferInfoCallback callback) throws TransferInfoException {
 
-        try (FileInputStream inputStream = new FileInputStream(new File(drivePath.resolve(Paths.get(chunk.getId())).toString()))) {
+        try (FileInputStream inputStream = new FileInputStream(new File(drivePath.resolve(Paths.get(chunk.getDataId())).toString()))) {
 
 
             ByteBuffer byteBuffer = ByteBuffer
@@ -138,10 +138,10 @@ public class OfflineDriveProvider extends DriveProvider {
         try {
 
             Files.delete(drivePath
-                    .resolve(Paths.get(chunk.getId())));
+                    .resolve(Paths.get(chunk.getDataId())));
 
             Files.delete(drivePath
-                    .resolve(Paths.get(chunk.getId() + ".rev")));
+                    .resolve(Paths.get(chunk.getDataId() + ".rev")));
 
         } catch (Exception e) {
             throw new TransferInfoAbortException(e.getMessage());
@@ -156,7 +156,7 @@ public class OfflineDriveProvider extends DriveProvider {
         try {
 
             long currentRev = chunk.getRevision();
-            long updatedRev = Long.parseUnsignedLong(Files.readString(drivePath.resolve(chunk.getId() + ".rev")));
+            long updatedRev = Long.parseUnsignedLong(Files.readString(drivePath.resolve(chunk.getDataId() + ".rev")));
 
             return (int) (currentRev - updatedRev);
 
@@ -60,7 +60,7 @@ public class Config implements ApplicationService {
         Application.log(getClass(), "WARNING! %s not found in cache", name);
 
 
-        AtomicReference<Optional<Object>> result = new AtomicReference<>();
+        AtomicReference<Optional<Object>> result = new AtomicReference<>(Optional.empty());
 
         try {
 
@@ -110,11 +110,15 @@ public class Database {
                 if (onPrepare != null)
                     onPrepare.run(stmt);
 
-                if(batch)
-                    stmt.executeBatch();
-                else
+                if(!batch)
                     return stmt.executeUpdate();
 
+
+                conn.setAutoCommit(false);
+
+                stmt.executeBatch();
+                conn.commit();
+
                 return 0;
 
             }
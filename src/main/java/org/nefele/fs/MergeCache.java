@@ -0,0 +1,447 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import org.nefele.Application;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+public class MergeCache {
+
+    public static final int CACHE_STATE_NONE = -1;
+    public static final int CACHE_STATE_DIRTY = 0;
+    public static final int CACHE_STATE_UPLOADING = 1;
+    public static final int CACHE_STATE_CLEAN = 2;
+
+    public static final String CACHE_INDEX = ".index";
+
+
+    private final Path cachePath;
+    private final ConcurrentHashMap<String, MergeCacheEntry> entries;
+    private final LinkedHashMap<String, MergeCacheEntry> recents;
+    private final HashMap<String, Integer> pins;
+    private final AtomicLong size;
+    private volatile Consumer<String> listener;
+
+
+    public MergeCache(Path cachePath) {
+
+        this.cachePath = cachePath;
+        this.entries = new ConcurrentHashMap<>();
+        this.recents = new LinkedHashMap<>(16, 0.75f, true);
+        this.pins = new HashMap<>();
+        this.size = new AtomicLong(0L);
+
+    }
+
+
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    private void changed(String id) {
+
+        final var listener = this.listener;
+
+        if(listener != null)
+            listener.accept(id);
+
+    }
+
+
+    public void put(MergeChunk chunk, int state) {
+        put(chunk, state, -1L);
+    }
+
+    public void put(MergeChunk chunk, int state, long checksum) {
+        put(chunk.getDataId(), new MergeCacheEntry(chunk.getSize(), state, chunk.getRevision(), checksum, false));
+    }
+
+    private synchronized void put(String id, MergeCacheEntry entry) {
+
+        final var bytes = entry.bytes;
+
+        recents.put(id, entry);
+        entry = entries.put(id, entry);
+
+        if(entry != null)
+            size.addAndGet(-entry.bytes);
+
+        size.addAndGet(bytes);
+
+        changed(id);
+
+    }
+
+    public synchronized void touch(MergeChunk chunk) {
+        recents.get(chunk.getDataId());
+    }
+
+    public synchronized void pin(String id) {
+        pins.merge(id, 1, Integer::sum);
+    }
+
+    public synchronized void unpin(String id) {
+        pins.computeIfPresent(id, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    public boolean contains(MergeChunk chunk) {
+
+        MergeCacheEntry entry = entries.get(chunk.getDataId());
+
+        if(entry == null)
+            return false;
+
+        if(!entry.restored)
+            return true;
+
+
+        if(entry.state != CACHE_STATE_CLEAN) {
+
+            if(entry.revision != chunk.getRevision())
+                Application.log(getClass(), "WARNING! Keeping pending chunk %s in local cache (revision %d != %d)", chunk.getDataId(), entry.revision, chunk.getRevision());
+
+            entry.restored = false;
+            return true;
+
+        }
+
+
+        if(entry.revision != chunk.getRevision()) {
+
+            Application.log(getClass(), "Dropping stale chunk %s from local cache (revision %d != %d)", chunk.getDataId(), entry.revision, chunk.getRevision());
+
+            remove(chunk.getDataId(), entry);
+            return false;
+
+        }
+
+
+        try {
+
+            final var checksum = checksum(cachePath.resolve(chunk.getDataId()));
+
+            if(checksum != entry.checksum) {
+
+                Application.log(getClass(), "Dropping corrupted chunk %s from local cache (checksum %08x != %08x)", chunk.getDataId(), checksum, entry.checksum);
+
+                remove(chunk.getDataId(), entry);
+                return false;
+
+            }
+
+        } catch (IOException e) {
+
+            Application.log(getClass(), e, "contains()");
+
+            remove(chunk.getDataId(), entry);
+            return false;
+
+        }
+
+
+        entry.restored = false;
+        return true;
+
+    }
+
+    public long getChecksum(String id) {
+
+        MergeCacheEntry entry = entries.get(id);
+
+        if(entry == null)
+            return -1L;
+
+        return entry.checksum;
+
+    }
+
+    public int getState(MergeChunk chunk) {
+
+        MergeCacheEntry entry = entries.get(chunk.getDataId());
+
+        if(entry == null)
+            return CACHE_STATE_NONE;
+
+        return entry.state;
+
+    }
+
+    public synchronized boolean setState(MergeChunk chunk, int expectedState, int state) {
+
+        MergeCacheEntry entry = entries.get(chunk.getDataId());
+
+        if(entry == null || entry.state != expectedState)
+            return false;
+
+        entry.state = state;
+        return true;
+
+    }
+
+    public synchronized void remove(MergeChunk chunk) {
+        remove(chunk.getDataId());
+    }
+
+    protected synchronized void remove(String id) {
+
+        MergeCacheEntry entry = entries.remove(id);
+        recents.remove(id);
+
+        if(entry != null)
+            size.addAndGet(-entry.bytes);
+
+        try {
+            Files.deleteIfExists(cachePath.resolve(id));
+        } catch (IOException e) {
+            Application.log(getClass(), e, "remove()");
+        }
+
+        if(entry != null)
+            changed(id);
+
+    }
+
+    private synchronized void remove(String id, MergeCacheEntry entry) {
+
+        if(entries.get(id) == entry)
+            remove(id);
+
+    }
+
+
+    public synchronized void trim(long limit) {
+
+        if(size.get() <= limit)
+            return;
+
+
+        long evictedChunks = 0L;
+        long evictedBytes = 0L;
+
+        var iterator = recents.entrySet().iterator();
+
+        while(iterator.hasNext() && size.get() > limit) {
+
+            var entry = iterator.next();
+
+            if(entry.getValue().state != CACHE_STATE_CLEAN || pins.containsKey(entry.getKey()))
+                continue;
+
+
+            try {
+
+                Files.deleteIfExists(cachePath.resolve(entry.getKey()));
+
+            } catch (IOException e) {
+                Application.log(getClass(), e, "trim()");
+                continue;
+            }
+
+            iterator.remove();
+            entries.remove(entry.getKey());
+            size.addAndGet(-entry.getValue().bytes);
+
+            evictedChunks++;
+            evictedBytes += entry.getValue().bytes;
+
+            changed(entry.getKey());
+
+        }
+
+
+        if(evictedChunks > 0L)
+            Application.log(getClass(), "Evicted %d chunks (%d bytes) from local cache", evictedChunks, evictedBytes);
+
+        if(size.get() > limit)
+            Application.log(getClass(), "WARNING! Local cache is over limit (%d/%d bytes) but has no clean chunks left to evict", size.get(), limit);
+
+    }
+
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getPending() {
+        return entries.values().stream()
+                .filter(i -> i.state != CACHE_STATE_CLEAN)
+                .count();
+    }
+
+
+    public void load(Set<String> ids, boolean persistent) throws IOException {
+
+        final var index = new HashMap<String, MergeCacheEntry>();
+        final var indexPath = cachePath.resolve(CACHE_INDEX);
+
+        if(persistent && Files.exists(indexPath)) {
+
+            for(String line : Files.readAllLines(indexPath)) {
+
+                final var fields = line.split(" ");
+
+                if(fields.length != 4)
+                    continue;
+
+                try {
+
+                    index.put(fields[0], new MergeCacheEntry(0L,
+                            Integer.parseInt(fields[3]) == CACHE_STATE_CLEAN
+                                    ? CACHE_STATE_CLEAN
+                                    : CACHE_STATE_DIRTY,
+                            Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2], 16),
+                            true));
+
+                } catch (NumberFormatException ignored) { }
+
+            }
+
+        }
+
+        Files.deleteIfExists(indexPath);
+
+
+        final var unindexed = new AtomicLong(0L);
+
+        Files.walkFileTree(cachePath, Set.of(), 1, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+                final var id = file.getFileName().toString();
+
+                if(!ids.contains(id))
+                    Files.deleteIfExists(file);
+
+                else if(index.containsKey(id)) {
+
+                    final var entry = index.get(id);
+                    put(id, new MergeCacheEntry(attrs.size(), entry.state, entry.revision, entry.checksum, true));
+
+                } else {
+
+                    put(id, new MergeCacheEntry(attrs.size(), CACHE_STATE_DIRTY, -1L, -1L, false));
+                    unindexed.incrementAndGet();
+
+                }
+
+                return FileVisitResult.CONTINUE;
+
+            }
+
+        });
+
+
+        if(unindexed.get() > 0L)
+            Application.log(getClass(), "WARNING! Restored %d unindexed chunks from local cache as pending upload", unindexed.get());
+
+        Application.log(getClass(), "Loaded %d chunks (%d bytes) from local cache", entries.size(), size.get());
+
+    }
+
+    public void save() throws IOException {
+
+        final var lines = new ArrayList<String>();
+
+        for(var entry : entries.entrySet()) {
+
+            if(entry.getValue().revision < 0L)
+                continue;
+
+            if(entry.getValue().checksum < 0L)
+                continue;
+
+            lines.add(String.format("%s %d %x %d", entry.getKey(), entry.getValue().revision, entry.getValue().checksum, entry.getValue().state));
+
+        }
+
+
+        Files.write(cachePath.resolve(CACHE_INDEX), lines);
+
+        Application.log(getClass(), "Saved %d chunks (%d bytes) to local cache index", lines.size(), size.get());
+
+    }
+
+
+    static long checksum(Path path) throws IOException {
+
+        final var crc = new CRC32();
+
+        try(var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final var byteBuffer = ByteBuffer.allocate(65536);
+
+            while(channel.read(byteBuffer.clear()) > 0)
+                crc.update(byteBuffer.flip());
+
+        }
+
+        return crc.getValue();
+
+    }
+
+
+
+    private static final class MergeCacheEntry {
+
+        private final long bytes;
+        private final long revision;
+        private final long checksum;
+        private volatile int state;
+        private volatile boolean restored;
+
+        private MergeCacheEntry(long bytes, int state, long revision, long checksum, boolean restored) {
+            this.bytes = bytes;
+            this.state = state;
+            this.revision = revision;
+            this.checksum = checksum;
+            this.restored = restored;
+        }
+
+    }
+
+}
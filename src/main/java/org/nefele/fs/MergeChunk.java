@@ -28,21 +28,30 @@ import org.nefele.Application;
 import org.nefele.Invalidatable;
 import org.nefele.cloud.DriveProvider;
 
+import java.time.Instant;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MergeChunk implements Invalidatable {
 
     private final String id;
     private final long offset;
     private final MergeNode inode;
-    private final DriveProvider driveProvider;
     private final boolean compressed;
     private final boolean encrypted;
+    private final boolean framed;
+    private DriveProvider driveProvider;
+    private String dataId;
+    private String hash;
     private long size;
-    private long revision;
+    private volatile long revision;
     private boolean dirty;
+    private MergeStorage storage;
+    private long accountedSize;
+    private long accountedCache;
+    private final AtomicBoolean queued;
 
-    public MergeChunk(String id, long offset, MergeNode inode, DriveProvider driveProvider, long revision, long size, boolean compressed, boolean encrypted) {
+    public MergeChunk(String id, long offset, MergeNode inode, DriveProvider driveProvider, long revision, long size, boolean compressed, boolean encrypted, boolean framed, String dataId, String hash) {
         this.id = id;
         this.offset = offset;
         this.inode = inode;
@@ -50,8 +59,12 @@ public class MergeChunk implements Invalidatable {
         this.revision = revision;
         this.compressed = compressed;
         this.encrypted = encrypted;
+        this.framed = framed;
         this.size = size;
+        this.dataId = dataId;
+        this.hash = hash;
         this.dirty = false;
+        this.queued = new AtomicBoolean(false);
     }
 
 
@@ -71,6 +84,26 @@ public class MergeChunk implements Invalidatable {
         return driveProvider;
     }
 
+    public void setDriveProvider(DriveProvider driveProvider) {
+        this.driveProvider = driveProvider;
+    }
+
+    public String getDataId() {
+        return dataId;
+    }
+
+    public void setDataId(String dataId) {
+        this.dataId = dataId;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
     public long getRevision() {
         return revision;
     }
@@ -79,6 +112,10 @@ public class MergeChunk implements Invalidatable {
         this.revision = revision;
     }
 
+    public synchronized long nextRevision() {
+        return revision = Math.max(Instant.now().toEpochMilli(), revision + 1L);
+    }
+
     public boolean isCompressed() {
         return compressed;
     }
@@ -87,6 +124,10 @@ public class MergeChunk implements Invalidatable {
         return encrypted;
     }
 
+    public boolean isFramed() {
+        return framed;
+    }
+
     public void setSize(long size) {
         this.size = size;
     }
@@ -95,9 +136,27 @@ public class MergeChunk implements Invalidatable {
         return size;
     }
 
+    long getAccountedSize() {
+        return accountedSize;
+    }
+
+    long getAccountedCache() {
+        return accountedCache;
+    }
+
+    void setAccounted(long accountedSize, long accountedCache) {
+        this.accountedSize = accountedSize;
+        this.accountedCache = accountedCache;
+    }
+
     @Override
     public void invalidate() {
+
         dirty = true;
+
+        if(storage != null && queued.compareAndSet(false, true))
+            storage.enqueue(this);
+
     }
 
     @Override
@@ -110,6 +169,19 @@ public class MergeChunk implements Invalidatable {
         return dirty;
     }
 
+    void attach(MergeStorage storage) {
+
+        this.storage = storage;
+
+        if(dirty && queued.compareAndSet(false, true))
+            storage.enqueue(this);
+
+    }
+
+    void dequeue() {
+        queued.set(false);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
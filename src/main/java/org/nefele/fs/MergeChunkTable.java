@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+public class MergeChunkTable extends AbstractCollection<MergeChunk> {
+
+    private static final MergeChunk[] EMPTY = new MergeChunk[0];
+    private static final int MIN_BLOCKS = 16;
+
+
+    private MergeChunk[] table;
+    private TreeMap<Long, MergeChunk> sparse;
+    private int size;
+
+
+    public MergeChunkTable() {
+        this.table = EMPTY;
+        this.sparse = null;
+        this.size = 0;
+    }
+
+
+    public synchronized MergeChunk get(long block) {
+
+        if(block < 0L)
+            return null;
+
+        if(block < table.length)
+            return table[(int) block];
+
+        if(sparse == null)
+            return null;
+
+        return sparse.get(block);
+
+    }
+
+    public synchronized MergeChunk putIfAbsent(MergeChunk chunk) {
+
+        final long block = chunk.getOffset();
+
+        if(block < 0L)
+            throw new IllegalArgumentException(String.format("chunk %s has an invalid offset %d", chunk.getId(), block));
+
+
+        if(block >= table.length && block < Math.max(MIN_BLOCKS, (size + 1L) * 2L))
+            grow((int) Math.max(block + 1L, Math.min(Math.max(MIN_BLOCKS, table.length * 2L), (size + 1L) * 2L)));
+
+
+        if(block < table.length) {
+
+            if(table[(int) block] != null)
+                return table[(int) block];
+
+            table[(int) block] = chunk;
+
+        } else {
+
+            if(sparse == null)
+                sparse = new TreeMap<>();
+
+            final var existing = sparse.putIfAbsent(block, chunk);
+
+            if(existing != null)
+                return existing;
+
+        }
+
+        size++;
+
+        return null;
+
+    }
+
+    private void grow(int length) {
+
+        table = Arrays.copyOf(table, length);
+
+        if(sparse == null)
+            return;
+
+
+        final var moved = sparse.headMap((long) length);
+
+        moved.forEach((block, chunk) -> table[block.intValue()] = chunk);
+        moved.clear();
+
+        if(sparse.isEmpty())
+            sparse = null;
+
+    }
+
+    @Override
+    public boolean add(MergeChunk chunk) {
+        return putIfAbsent(chunk) == null;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+
+        if(!(o instanceof MergeChunk))
+            return false;
+
+
+        final long block = ((MergeChunk) o).getOffset();
+
+        if(block < 0L)
+            return false;
+
+        if(block < table.length) {
+
+            if(!o.equals(table[(int) block]))
+                return false;
+
+            table[(int) block] = null;
+
+        } else {
+
+            if(sparse == null || !sparse.remove(block, o))
+                return false;
+
+            if(sparse.isEmpty())
+                sparse = null;
+
+        }
+
+        size--;
+
+        return true;
+
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<MergeChunk> iterator() {
+        return Arrays.asList(snapshot()).iterator();
+    }
+
+    private synchronized MergeChunk[] snapshot() {
+
+        final var chunks = new MergeChunk[size];
+
+        int j = 0;
+
+        for(int i = 0; i < table.length && j < size; i++) {
+
+            if(table[i] != null)
+                chunks[j++] = table[i];
+
+        }
+
+        if(sparse != null) {
+
+            for(var chunk : sparse.values())
+                chunks[j++] = chunk;
+
+        }
+
+        return chunks;
+
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import java.io.IOException;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MergeFileAttributeView implements NefeleFileAttributeView {
+
+    private static final List<String> BASIC_ATTRIBUTES = List.of(
+            "lastModifiedTime", "lastAccessTime", "creationTime", "size",
+            "isRegularFile", "isDirectory", "isSymbolicLink", "isOther", "fileKey"
+    );
+
+    private static final List<String> NEFELE_ATTRIBUTES = List.of(
+            "chunks", "cachedBytes", "cachedRatio", "drives", "compressed", "encrypted", "pendingBytes", "totalSize"
+    );
+
+
+    private final MergeFileSystem fileSystem;
+    private final MergeNode inode;
+    private final String name;
+
+
+    public MergeFileAttributeView(MergeFileSystem fileSystem, MergeNode inode) {
+        this(fileSystem, inode, "nefele");
+    }
+
+    public MergeFileAttributeView(MergeFileSystem fileSystem, MergeNode inode, String name) {
+        this.fileSystem = fileSystem;
+        this.inode = inode;
+        this.name = name;
+    }
+
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public NefeleFileAttributes readAttributes() throws IOException {
+
+        return new NefeleFileAttributes() {
+
+            private int chunks;
+            private long totalBytes;
+            private long cachedBytes;
+            private long pendingBytes;
+            private boolean compressed;
+            private boolean encrypted;
+            private Set<String> drives;
+
+
+            private void scan() {
+
+                if(drives != null)
+                    return;
+
+
+                final var storage = fileSystem.getStorage();
+                final var driveIds = new HashSet<String>();
+
+                if(inode.getMime().equals("directory")) {
+
+                    final var rollup = fileSystem.getFileTree().getRollup(inode);
+
+                    totalBytes = rollup.getStoredSize();
+                    cachedBytes = rollup.getCachedSize();
+
+                }
+
+                for(var chunk : inode.getChunks()) {
+
+                    chunks++;
+                    totalBytes += chunk.getSize();
+
+                    if(storage.getCache().contains(chunk.getDataId()))
+                        cachedBytes += chunk.getSize();
+
+                    if(storage.getCache().getState(chunk) == MergeCache.CACHE_STATE_DIRTY || storage.getCache().getState(chunk) == MergeCache.CACHE_STATE_UPLOADING)
+                        pendingBytes += chunk.getSize();
+
+                    compressed |= chunk.isCompressed();
+                    encrypted |= chunk.isEncrypted();
+
+                    driveIds.add(chunk.getDriveProvider().getId());
+
+                }
+
+                drives = Set.copyOf(driveIds);
+
+            }
+
+
+            @Override
+            public FileTime lastModifiedTime() {
+                return FileTime.from(inode.getModifiedTime());
+            }
+
+            @Override
+            public FileTime lastAccessTime() {
+                return FileTime.from(inode.getAccessedTime());
+            }
+
+            @Override
+            public FileTime creationTime() {
+                return FileTime.from(inode.getCreatedTime());
+            }
+
+            @Override
+            public boolean isRegularFile() {
+                return !inode.getMime().equals("directory");
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return inode.getMime().equals("directory");
+            }
+
+            @Override
+            public boolean isSymbolicLink() {
+                return false;
+            }
+
+            @Override
+            public boolean isOther() {
+                return false;
+            }
+
+            @Override
+            public long size() {
+                return inode.getSize();
+            }
+
+            @Override
+            public Object fileKey() {
+                return inode;
+            }
+
+            @Override
+            public int chunks() {
+                scan();
+                return chunks;
+            }
+
+            @Override
+            public long cachedBytes() {
+                scan();
+                return cachedBytes;
+            }
+
+            @Override
+            public double cachedRatio() {
+
+                scan();
+
+                if(totalBytes == 0L)
+                    return 1.0;
+
+                return (double) cachedBytes / (double) totalBytes;
+
+            }
+
+            @Override
+            public Set<String> drives() {
+                scan();
+                return drives;
+            }
+
+            @Override
+            public boolean isCompressed() {
+                scan();
+                return compressed;
+            }
+
+            @Override
+            public boolean isEncrypted() {
+                scan();
+                return encrypted;
+            }
+
+            @Override
+            public long pendingBytes() {
+                scan();
+                return pendingBytes;
+            }
+
+            @Override
+            public long totalSize() {
+
+                if(inode.getMime().equals("directory"))
+                    return fileSystem.getFileTree().getRollup(inode).getSize();
+
+                return inode.getSize();
+
+            }
+
+        };
+
+    }
+
+    @Override
+    public void setTimes(FileTime mtime, FileTime atime, FileTime ctime) throws IOException {
+
+        if (mtime != null)
+            inode.setModifiedTime(mtime.toInstant());
+
+        if (atime != null)
+            inode.setAccessedTime(atime.toInstant());
+
+        if (ctime != null)
+            inode.setCreatedTime(ctime.toInstant());
+
+        inode.invalidate();
+
+    }
+
+
+    public Map<String, Object> readAttributes(String view, String names) throws IOException {
+
+        if(!view.equals("basic") && !view.equals("nefele"))
+            throw new UnsupportedOperationException("View not supported: " + view);
+
+
+        final var attributes = readAttributes();
+        final var result = new HashMap<String, Object>();
+
+        for(var attribute : names.split(",")) {
+
+            if(attribute.equals("*")) {
+
+                for(var i : BASIC_ATTRIBUTES)
+                    result.put(i, getAttribute(attributes, i));
+
+                if(view.equals("nefele")) {
+                    for (var i : NEFELE_ATTRIBUTES)
+                        result.put(i, getAttribute(attributes, i));
+                }
+
+            } else {
+
+                if(!BASIC_ATTRIBUTES.contains(attribute) && !(view.equals("nefele") && NEFELE_ATTRIBUTES.contains(attribute)))
+                    throw new IllegalArgumentException(String.format("'%s' not recognized", attribute));
+
+                result.put(attribute, getAttribute(attributes, attribute));
+
+            }
+
+        }
+
+        return result;
+
+    }
+
+    public void setAttribute(String view, String name, Object value) throws IOException {
+
+        if(!view.equals("basic") && !view.equals("nefele"))
+            throw new UnsupportedOperationException("View not supported: " + view);
+
+
+        switch (name) {
+
+            case "lastModifiedTime":
+                setTimes((FileTime) value, null, null);
+                break;
+
+            case "lastAccessTime":
+                setTimes(null, (FileTime) value, null);
+                break;
+
+            case "creationTime":
+                setTimes(null, null, (FileTime) value);
+                break;
+
+            default:
+                throw new IllegalArgumentException(String.format("'%s' not recognized or read-only", name));
+
+        }
+
+    }
+
+
+    private static Object getAttribute(NefeleFileAttributes attributes, String name) {
+
+        switch (name) {
+
+            case "lastModifiedTime": return attributes.lastModifiedTime();
+            case "lastAccessTime": return attributes.lastAccessTime();
+            case "creationTime": return attributes.creationTime();
+            case "size": return attributes.size();
+            case "isRegularFile": return attributes.isRegularFile();
+            case "isDirectory": return attributes.isDirectory();
+            case "isSymbolicLink": return attributes.isSymbolicLink();
+            case "isOther": return attributes.isOther();
+            case "fileKey": return attributes.fileKey();
+            case "chunks": return attributes.chunks();
+            case "cachedBytes": return attributes.cachedBytes();
+            case "cachedRatio": return attributes.cachedRatio();
+            case "drives": return attributes.drives();
+            case "compressed": return attributes.isCompressed();
+            case "encrypted": return attributes.isEncrypted();
+            case "pendingBytes": return attributes.pendingBytes();
+            case "totalSize": return attributes.totalSize();
+
+        }
+
+        throw new IllegalArgumentException(String.format("'%s' not recognized", name));
+
+    }
+
+}
@@ -25,7 +25,6 @@
 package org.nefele.fs;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -33,6 +32,7 @@ import java.nio.channels.FileLock;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.time.Instant;
+import java.util.Objects;
 
 public class MergeFileChannel extends FileChannel {
 
@@ -41,6 +41,16 @@ public class MergeFileChannel extends FileChannel {
     private final MergeFileSystem fileSystem;
     private long position;
 
+    private MergeChunk pendingChunk;
+    private ByteBuffer pendingBuffer;
+    private long pendingOffset;
+
+    private long readBlock;
+    private long readAhead;
+    private int readWindow;
+    private long readTime;
+    private long readInterval;
+
     public MergeFileChannel(MergePath path) {
 
         if(!(path.getFileSystem() instanceof MergeFileSystem))
@@ -51,6 +61,12 @@ public class MergeFileChannel extends FileChannel {
         this.fileSystem = (MergeFileSystem) path.getFileSystem();
         this.position = 0;
 
+        this.readBlock = -1L;
+        this.readAhead = -1L;
+        this.readWindow = 0;
+        this.readTime = 0L;
+        this.readInterval = 0L;
+
     }
 
 
@@ -61,13 +77,39 @@ public class MergeFileChannel extends FileChannel {
     @Override
     public int read(ByteBuffer byteBuffer) throws IOException {
         int e = read(byteBuffer, position);
-        position += e;
+
+        if(e > 0)
+            position += e;
+
         return e;
     }
 
     @Override
-    public long read(ByteBuffer[] byteBuffers, int i, int i1) throws IOException {
-        throw new UnsupportedOperationException();
+    public long read(ByteBuffer[] byteBuffers, int offset, int length) throws IOException {
+
+        Objects.checkFromIndexSize(offset, length, byteBuffers.length);
+
+        long total = 0L;
+
+        for(int i = offset; i < offset + length; i++) {
+
+            if(!byteBuffers[i].hasRemaining())
+                continue;
+
+            final int n = read(byteBuffers[i]);
+
+            if(n < 0)
+                return total > 0L ? total : -1L;
+
+            total += n;
+
+            if(byteBuffers[i].hasRemaining())
+                break;
+
+        }
+
+        return total;
+
     }
 
     @Override
@@ -78,8 +120,17 @@ public class MergeFileChannel extends FileChannel {
     }
 
     @Override
-    public long write(ByteBuffer[] byteBuffers, int offset, int length) throws IOException {
-        throw new UnsupportedOperationException();
+    public synchronized long write(ByteBuffer[] byteBuffers, int offset, int length) throws IOException {
+
+        Objects.checkFromIndexSize(offset, length, byteBuffers.length);
+
+        long total = 0L;
+
+        for(int i = offset; i < offset + length; i++)
+            total += write(byteBuffers[i]);
+
+        return total;
+
     }
 
     @Override
@@ -89,13 +140,23 @@ public class MergeFileChannel extends FileChannel {
 
     @Override
     public FileChannel position(long l) throws IOException {
+
+        if(pendingChunk != null && pendingChunk.getOffset() != l / MergeChunk.getDefaultSize())
+            flush();
+
         this.position = l;
         return this;
+
     }
 
     @Override
-    public long size() throws IOException {
+    public synchronized long size() throws IOException {
+
+        if(pendingChunk != null)
+            return Math.max(inode.getSize(), pendingChunk.getOffset() * MergeChunk.getDefaultSize() + pendingOffset + pendingBuffer.position());
+
         return inode.getSize();
+
     }
 
     @Override
@@ -105,17 +166,129 @@ public class MergeFileChannel extends FileChannel {
 
     @Override
     public void force(boolean b) throws IOException {
-        throw new UnsupportedOperationException();
+        flush();
     }
 
     @Override
-    public long transferTo(long l, long l1, WritableByteChannel writableByteChannel) throws IOException {
-        throw new UnsupportedOperationException();
+    public long transferTo(long position, long count, WritableByteChannel writableByteChannel) throws IOException {
+
+        if(position < 0L || count < 0L)
+            throw new IllegalArgumentException();
+
+
+        final long blocksize = MergeChunk.getDefaultSize();
+        final long initpos = position;
+
+        if(blocksize < 8192L)
+            throw new IllegalStateException();
+
+
+        flush();
+
+        if(initpos > getInode().getSize())
+            return 0L;
+
+        final long endpos = Math.min(initpos + count, getInode().getSize());
+
+
+
+        while(position < endpos) {
+
+            long block = position / blocksize;
+            long offset = position % blocksize;
+            long size = Math.min(endpos - position, blocksize - offset);
+
+
+            MergeChunk chunk = getInode().getChunks().get(block);
+
+            if(chunk == null)
+                throw new IOException(String.format("chunk at offset %d not found for inode %s", block, getInode().getId()));
+
+
+            if(block != readBlock)
+                readAhead(block, chunk);
+
+            long transferred = getFileSystem().getStorage()
+                    .transferTo(chunk, offset, size, writableByteChannel);
+
+            if(transferred < 0L) {
+
+                ByteBuffer chunkBuffer = getFileSystem().getStorage()
+                        .read(chunk, offset, (int) size);
+
+                if(!chunkBuffer.hasRemaining())
+                    throw new IOException(String.format("chunk %s is shorter than expected (no data at %d)", chunk.getId(), offset));
+
+                transferred = 0L;
+
+                while(chunkBuffer.hasRemaining()) {
+
+                    final int n = writableByteChannel.write(chunkBuffer);
+
+                    if(n <= 0)
+                        break;
+
+                    transferred += n;
+
+                }
+
+            }
+
+            position += transferred;
+
+            if(transferred < size)
+                break;
+
+        }
+
+
+        return position - initpos;
+
     }
 
     @Override
-    public long transferFrom(ReadableByteChannel readableByteChannel, long l, long l1) throws IOException {
-        throw new UnsupportedOperationException();
+    public long transferFrom(ReadableByteChannel readableByteChannel, long position, long count) throws IOException {
+
+        if(position < 0L || count < 0L)
+            throw new IllegalArgumentException();
+
+        if(count == 0L || position > size())
+            return 0L;
+
+
+        final long blocksize = MergeChunk.getDefaultSize();
+        final long initpos = position;
+
+        final var byteBuffer = ByteBuffer.allocate((int) Math.min(count, blocksize));
+
+
+        while(position - initpos < count) {
+
+            final long offset = position % blocksize;
+
+            byteBuffer.clear().limit((int) Math.min(byteBuffer.capacity(), Math.min(blocksize - offset, count - (position - initpos))));
+
+
+            int n;
+
+            do {
+                n = readableByteChannel.read(byteBuffer);
+            } while(n > 0 && byteBuffer.hasRemaining());
+
+            if(byteBuffer.position() == 0)
+                break;
+
+
+            position += write(byteBuffer.flip(), position);
+
+            if(n <= 0)
+                break;
+
+        }
+
+
+        return position - initpos;
+
     }
 
     @Override
@@ -132,57 +305,101 @@ public class MergeFileChannel extends FileChannel {
             throw new IllegalStateException();
 
 
-        if(initpos > getInode().getSize())
-            return 0;
+        flush();
 
-        if(initpos + byteBuffer.remaining() > getInode().getSize())
-            byteBuffer.limit((int) (getInode().getSize() - initpos));
+        if(initpos >= getInode().getSize())
+            return -1;
 
+        final long endpos = Math.min(initpos + byteBuffer.remaining(), getInode().getSize());
 
 
-        while(byteBuffer.hasRemaining()) {
+
+        while(position < endpos) {
 
             long block = position / blocksize;
             long offset = position % blocksize;
 
 
-            MergeChunk chunk = getInode().getChunks()
-                    .stream()
-                    .filter(i -> i.getOffset() == block)
-                    .findFirst()
-                    .orElse(null);
+            MergeChunk chunk = getInode().getChunks().get(block);
 
             if(chunk == null)
                 throw new IOException(String.format("chunk at offset %d not found for inode %s", block, getInode().getId()));
 
 
-            try (InputStream inputStream = getFileSystem().getStorage().read(chunk, false)) {
+            if(block != readBlock)
+                readAhead(block, chunk);
 
-                inputStream.skip(offset);
+            ByteBuffer chunkBuffer = getFileSystem().getStorage()
+                    .read(chunk, offset, (int) Math.min(blocksize - offset, endpos - position));
 
+            if(!chunkBuffer.hasRemaining())
+                throw new IOException(String.format("chunk %s is shorter than expected (no data at %d)", chunk.getId(), offset));
 
-                while(inputStream.available() > 0 && byteBuffer.hasRemaining()) {
 
-                    var bytes = new byte[Math.min(Math.min(65536, inputStream.available()), byteBuffer.remaining())];
+            position += chunkBuffer.remaining();
+            byteBuffer.put(chunkBuffer);
 
-                    if(inputStream.read(bytes) > 0)
-                        byteBuffer.put(bytes);
+        }
 
-                    position += bytes.length;
 
-                }
+        return (int) (position - initpos);
 
-            }
+    }
+
+    private void readAhead(long block, MergeChunk chunk) {
+
+        final var storage = getFileSystem().getStorage();
+        final var now = System.nanoTime();
 
+        boolean stalled;
+
+        try {
+            stalled = storage.await(chunk);
+        } catch (IOException e) {
+            stalled = true;
         }
 
+        if(block != readBlock + 1) {
 
-        return (int) (position - initpos);
+            readWindow = 0;
+            readInterval = 0L;
+            readAhead = block;
+
+        } else {
+
+            final var elapsed = now - readTime;
+            readInterval = readInterval == 0L ? elapsed : (readInterval * 3L + elapsed) / 4L;
+
+            final var limit = storage.getReadAheadLimit();
+            final var needed = (int) Math.min(limit, storage.getFetchLatency() / Math.max(1L, readInterval) + 1L);
+
+            if(readWindow == 0 || stalled || readWindow < needed)
+                readWindow = Math.min(Math.max(readWindow * 2, 1), limit);
+
+            else if(readWindow > needed * 2)
+                readWindow = Math.max(readWindow / 2, 1);
+
+        }
+
+        readBlock = block;
+        readTime = System.nanoTime();
+
+
+        for(long next = Math.max(readAhead + 1, block + 1); next <= block + readWindow; next++) {
+
+            final var following = getInode().getChunks().get(next);
+
+            if(following != null)
+                storage.prefetch(following);
+
+            readAhead = next;
+
+        }
 
     }
 
     @Override
-    public int write(ByteBuffer byteBuffer, long position) throws IOException {
+    public synchronized int write(ByteBuffer byteBuffer, long position) throws IOException {
 
         if(!byteBuffer.hasRemaining())
             return 0;
@@ -203,27 +420,45 @@ public class MergeFileChannel extends FileChannel {
             long size = Math.min(byteBuffer.remaining(), blocksize - offset);
 
 
-            MergeChunk chunk = getInode().getChunks()
-                        .stream()
-                        .filter(i -> i.getOffset() == block)
-                        .findFirst()
-                        .orElse(null);
+            MergeChunk chunk = getInode().getChunks().get(block);
 
             if(chunk == null)
                 chunk = getFileSystem().getStorage().alloc(getInode(), block);
 
 
-            if(getInode().getSize() < position + size) {
+            final var slice = byteBuffer.slice()
+                    .limit((int) size);
+
 
-                getInode().setSize(position + size);
-                getInode().setAccessedTime(Instant.now());
-                getInode().setModifiedTime(Instant.now());
-                getInode().invalidate();
+            if(pendingChunk != null && (pendingChunk != chunk || pendingOffset + pendingBuffer.position() != offset))
+                flush();
+
+            if(pendingChunk == null && size < blocksize && getFileSystem().getStorage().reserveBuffer(blocksize)) {
+
+                pendingChunk = chunk;
+                pendingBuffer = ByteBuffer.allocate((int) blocksize);
+                pendingOffset = offset;
 
             }
 
-            getFileSystem().getStorage()
-                    .write(chunk, byteBuffer, offset, true);
+
+            if(pendingChunk != null) {
+
+                pendingBuffer.put(slice);
+
+                if(pendingOffset + pendingBuffer.position() == blocksize)
+                    flush();
+
+            } else {
+
+                getFileSystem().getStorage()
+                        .write(chunk, slice, offset, true);
+
+                grow(position + size);
+
+            }
+
+            byteBuffer.position(byteBuffer.position() + (int) size);
 
 
             position += size;
@@ -238,8 +473,38 @@ public class MergeFileChannel extends FileChannel {
 
 
     @Override
-    public MappedByteBuffer map(MapMode mapMode, long l, long l1) throws IOException {
-        throw new UnsupportedOperationException();
+    public MappedByteBuffer map(MapMode mapMode, long position, long size) throws IOException {
+
+        if(mapMode != MapMode.READ_ONLY)
+            throw new UnsupportedOperationException("only READ_ONLY mappings are supported");
+
+        if(position < 0L || size < 0L || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException();
+
+
+        final long blocksize = MergeChunk.getDefaultSize();
+        final long block = position / blocksize;
+        final long offset = position % blocksize;
+
+        if(offset + size > blocksize)
+            throw new UnsupportedOperationException(String.format("mapping %d bytes at %d would span more than one chunk", size, position));
+
+
+        flush();
+
+        if(position + size > getInode().getSize())
+            throw new IOException(String.format("mapping %d bytes at %d exceeds file size %d", size, position, getInode().getSize()));
+
+
+        MergeChunk chunk = getInode().getChunks().get(block);
+
+        if(chunk == null)
+            throw new IOException(String.format("chunk at offset %d not found for inode %s", block, getInode().getId()));
+
+
+        return getFileSystem().getStorage()
+                .map(chunk, offset, size);
+
     }
 
     @Override
@@ -254,6 +519,48 @@ public class MergeFileChannel extends FileChannel {
 
     @Override
     protected void implCloseChannel() throws IOException {
+        flush();
+    }
+
+    protected synchronized void flush() throws IOException {
+
+        if(pendingChunk == null)
+            return;
+
+
+        try {
+
+            final long end = pendingChunk.getOffset() * MergeChunk.getDefaultSize() + pendingOffset + pendingBuffer.position();
+
+            getFileSystem().getStorage()
+                    .write(pendingChunk, pendingBuffer.flip(), pendingOffset, true);
+
+            grow(end);
+
+        } finally {
+
+            getFileSystem().getStorage().releaseBuffer(pendingBuffer.capacity());
+
+            pendingChunk = null;
+            pendingBuffer = null;
+
+        }
+
+    }
+
+    private void grow(long end) {
+
+        synchronized (getInode()) {
+
+            if(getInode().getSize() >= end)
+                return;
+
+            getInode().setSize(end);
+            getInode().setAccessedTime(Instant.now());
+            getInode().setModifiedTime(Instant.now());
+            getInode().invalidate();
+
+        }
 
     }
 
@@ -35,7 +35,7 @@ import java.nio.file.*;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileStoreAttributeView;
-import java.util.stream.Collectors;
+import java.time.Instant;
 
 
 public class MergeFileStore extends FileStore {
@@ -74,12 +74,8 @@ public class MergeFileStore extends FileStore {
     @Override
     public long getUsableSpace() throws IOException {
 
-        return getTotalSpace() - fileSystem.getStorage().getInodeStream()
-                .flatMap(i -> i.getChunks().stream())
-                .collect(Collectors.toList())
-                .stream()
-                .mapToLong(MergeChunk::getSize)
-                .sum();
+        return getTotalSpace() - fileSystem.getStorage()
+                .getStoredSize();
 
     }
 
@@ -121,6 +117,9 @@ public class MergeFileStore extends FileStore {
         fileSystem.getStorage()
                 .create(inode);
 
+        fileSystem.getFileTree()
+                .invalidate(path.toAbsolutePath().toString(), false);
+
         fileSystem.getWatchService()
                 .post(StandardWatchEventKinds.ENTRY_CREATE, path);
 
@@ -138,8 +137,11 @@ public class MergeFileStore extends FileStore {
         inode.invalidate();
 
 
-        fileSystem.getStorage().getInodes()
-                .add(inode);
+        fileSystem.getStorage()
+                .create(inode);
+
+        fileSystem.getFileTree()
+                .invalidate(path.toAbsolutePath().toString(), false);
 
         fileSystem.getWatchService()
                 .post(StandardWatchEventKinds.ENTRY_CREATE, path);
@@ -150,8 +152,23 @@ public class MergeFileStore extends FileStore {
 
     public void delete(MergePath path) throws IOException {
 
+        final var absolutePath = (MergePath) path.toAbsolutePath();
+        final var directory = Mime.FOLDER.getType().equals(absolutePath.getInode().getMime());
+
+        deleteTree(absolutePath);
+
+        fileSystem.getFileTree()
+                .invalidate(absolutePath.toString(), directory);
+
+
+        Application.log(getClass(), "Deleted %s", path.toString());
+
+    }
+
+    private void deleteTree(MergePath path) {
+
         for(MergeNode child : fileSystem.getFileTree().listChildren(path.getInode()))
-            delete((MergePath) path.resolve(child.getName()));
+            deleteTree(path.child(child));
 
 
         fileSystem.getStorage()
@@ -160,39 +177,98 @@ public class MergeFileStore extends FileStore {
         fileSystem.getWatchService()
                 .post(StandardWatchEventKinds.ENTRY_DELETE, path);
 
+    }
 
-        Application.log(getClass(), "Deleted %s", path.toString());
+
+    public void copy(MergePath source, MergePath target, boolean replace) throws IOException {
+
+        if(source.getInode().getId().equals(target.getInode().getId()))
+            return;
+
+        target = clear(target, replace);
+
+
+        final var inode = target.getInode();
+
+        inode.setCreatedTime(Instant.now());
+        inode.setModifiedTime(source.getInode().getModifiedTime());
+        inode.setAccessedTime(Instant.now());
+        inode.setMime(source.getInode().getMime());
+
+        if(!source.getInode().getMime().equals(Mime.FOLDER.getType())) {
+
+            for(var chunk : source.getInode().getChunks())
+                fileSystem.getStorage().share(chunk, inode);
+
+            inode.setSize(source.getInode().getSize());
+
+        }
+
+        inode.invalidate();
+
+
+        fileSystem.getStorage()
+                .create(inode);
+
+        fileSystem.getFileTree()
+                .invalidate(target.toAbsolutePath().toString(), false);
+
+        fileSystem.getWatchService()
+                .post(StandardWatchEventKinds.ENTRY_CREATE, target);
+
+        Application.log(getClass(), "Copied %s to %s", source.toString(), target.toString());
+
+    }
+
+    private MergePath clear(MergePath target, boolean replace) throws IOException {
+
+        if(Files.notExists(target))
+            return target;
+
+        if(!replace)
+            throw new FileAlreadyExistsException(target.toString());
+
+        if(!fileSystem.getStorage().getChildren(target.getInode().getId()).isEmpty())
+            throw new DirectoryNotEmptyException(target.toString());
+
+
+        delete(target);
+
+        return (MergePath) fileSystem.getPath(target.toAbsolutePath().toString());
 
     }
 
+    public void move(MergePath oldPath, MergePath newPath, boolean replace) throws IOException {
+
+        final var inode = oldPath.getInode();
 
-    public void move(MergePath oldPath, MergePath newPath) throws IOException {
+        if(inode.getId().equals(newPath.getInode().getId()))
+            return;
 
-        if(Files.exists(newPath))
-            throw new FileAlreadyExistsException(newPath.toString());
 
+        for(var i = fileSystem.getFileTree().resolve(newPath.getInode().getParent()); i != null; i = fileSystem.getFileTree().resolve(i.getParent())) {
 
-        newPath.getInode().setCreatedTime(oldPath.getInode().getCreatedTime());
-        newPath.getInode().setModifiedTime(oldPath.getInode().getModifiedTime());
-        newPath.getInode().setAccessedTime(oldPath.getInode().getAccessedTime());
-        newPath.getInode().setSize(oldPath.getInode().getSize());
-        newPath.getInode().setMime(oldPath.getInode().getMime());
-        newPath.getInode().setParent(oldPath.getInode().getParent());
-        newPath.getInode().getChunks().addAll(oldPath.getInode().getChunks());
+            if(i.getId().equals(inode.getId()))
+                throw new FileSystemException(oldPath.toString(), newPath.toString(), "Cannot move a directory into itself");
 
-        newPath.getInode().invalidate();
+        }
 
 
+        newPath = clear(newPath, replace);
 
         fileSystem.getStorage()
-                .free(oldPath.getInode(), false);
+                .move(inode, newPath.getInode().getParent(), newPath.getInode().getName());
+
+        fileSystem.getFileTree()
+                .invalidate(oldPath.toAbsolutePath().toString(), Mime.FOLDER.getType().equals(inode.getMime()));
 
-        fileSystem.getStorage().getInodes()
-                .add(newPath.getInode());
+        fileSystem.getFileTree()
+                .invalidate(newPath.toAbsolutePath().toString(), false);
 
 
         fileSystem.getWatchService().post(StandardWatchEventKinds.ENTRY_DELETE, oldPath);
-        fileSystem.getWatchService().post(StandardWatchEventKinds.ENTRY_CREATE, newPath);
+        fileSystem.getWatchService().post(StandardWatchEventKinds.ENTRY_CREATE,
+                new MergePath(fileSystem, inode, newPath.toAbsolutePath().toString(), newPath.toAbsolutePath().toString()));
 
         Application.log(getClass(), "Moved %s to %s", oldPath.toString(), newPath.toString());
 
@@ -200,7 +276,7 @@ public class MergeFileStore extends FileStore {
 
     public void checkAccess(MergePath path) throws NoSuchFileException {
 
-        if(!fileSystem.getStorage().getInodes().contains(path.getInode()))
+        if(fileSystem.getStorage().getInode(path.getInode().getId()) == null)
             throw new NoSuchFileException(path.toString());
 
     }
@@ -104,7 +104,7 @@ public class MergeFileSystem extends FileSystem {
 
     @Override
     public Set<String> supportedFileAttributeViews() {
-        return null;
+        return Set.of("basic", "nefele");
     }
 
     @Override
@@ -114,11 +114,7 @@ public class MergeFileSystem extends FileSystem {
             throw new IllegalArgumentException("Path must be absolute! " + s);
 
 
-        try {
-            return new MergePath(this, fileTree.resolve(s.split(MergeFileSystem.PATH_SEPARATOR)), s, s);
-        } catch (FileSystemException e) {
-            throw new IllegalArgumentException(e.getMessage());
-        }
+        return MergePath.of(this, MergePath.split(s));
 
     }
 
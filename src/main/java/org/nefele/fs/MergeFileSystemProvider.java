@@ -24,19 +24,18 @@
 
 package org.nefele.fs;
 
-import org.nefele.Application;
-
 import java.io.IOException;
 import java.net.URI;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 
@@ -102,7 +101,8 @@ public class MergeFileSystemProvider extends FileSystemProvider {
             throw new IllegalArgumentException();
 
 
-        final var inode = ((MergePath) path).getInode();
+        final var directory = (MergePath) path;
+        final var inode = directory.getInode();
 
         if(inode == null)
             return null;
@@ -113,27 +113,47 @@ public class MergeFileSystemProvider extends FileSystemProvider {
             @Override
             public Iterator<Path> iterator() {
 
+                final var children = fileSystem.getFileTree()
+                        .listChildren(inode)
+                        .iterator();
+
                 return new Iterator<>() {
 
-                    private int index = 0;
+                    private Path next = null;
 
                     @Override
                     public boolean hasNext() {
-                        return (index < fileSystem.getFileTree().listChildren(inode).size());
+
+                        while(next == null && children.hasNext()) {
+
+                            final var entry = children.next();
+                            final var child = directory.child(entry);
+
+                            try {
+
+                                if(filter == null || filter.accept(child))
+                                    next = child;
+
+                            } catch (IOException e) {
+                                throw new DirectoryIteratorException(e);
+                            }
+
+                        }
+
+                        return next != null;
+
                     }
 
                     @Override
                     public Path next() {
 
-                        MergeNode entry = (MergeNode) fileSystem.getFileTree().listChildren(inode)
-                                .toArray()[index++];
+                        if(!hasNext())
+                            throw new NoSuchElementException();
 
-                        try {
-                            return new MergePath(fileSystem, entry, fileSystem.getFileTree().toAbsolutePath(entry), entry.getName());
-                        } catch (FileSystemException e) {
-                            Application.log(getClass(), e, "newDirectoryStream::iterator.next()");
-                            return null;
-                        }
+                        final var child = next;
+                        next = null;
+
+                        return child;
 
                     }
 
@@ -171,8 +191,24 @@ public class MergeFileSystemProvider extends FileSystemProvider {
     }
 
     @Override
-    public void copy(Path path, Path path1, CopyOption... copyOptions) throws IOException {
-        throw new UnsupportedOperationException();
+    public void copy(Path source, Path target, CopyOption... copyOptions) throws IOException {
+
+        if(!(source instanceof MergePath))
+            throw new IllegalArgumentException();
+
+        if(!(target instanceof MergePath))
+            throw new IllegalArgumentException();
+
+        if(!getFileStore(source).equals(getFileStore(target)))
+            throw new FileSystemException(source.toString(), target.toString(), "Same FileStore required to copy()");
+
+        if(Files.notExists(source))
+            throw new NoSuchFileException(source.toString());
+
+
+        ((MergeFileStore) getFileStore(source)).copy((MergePath) source, (MergePath) target,
+                Arrays.asList(copyOptions).contains(StandardCopyOption.REPLACE_EXISTING));
+
     }
 
     @Override
@@ -187,8 +223,12 @@ public class MergeFileSystemProvider extends FileSystemProvider {
         if(!getFileStore(oldPath).equals(getFileStore(newPath)))
             throw new FileSystemException(oldPath.toString(), newPath.toString(), "Same FileStore required to move()");
 
+        if(Files.notExists(oldPath))
+            throw new NoSuchFileException(oldPath.toString());
 
-        ((MergeFileStore) getFileStore(oldPath)).move((MergePath) oldPath, (MergePath) newPath);
+
+        ((MergeFileStore) getFileStore(oldPath)).move((MergePath) oldPath, (MergePath) newPath,
+                Arrays.asList(copyOptions).contains(StandardCopyOption.REPLACE_EXISTING));
 
     }
 
@@ -228,30 +268,51 @@ public class MergeFileSystemProvider extends FileSystemProvider {
     @Override
     public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> aClass, LinkOption... linkOptions) {
 
-        if(aClass.isInstance(BasicFileAttributeView.class))
+        if(!aClass.isAssignableFrom(MergeFileAttributeView.class))
+            return null;
+
+        if(NefeleFileAttributeView.class.isAssignableFrom(aClass))
             return (V) ((MergePath) path).getAttributeView();
 
-        return null;
+        return (V) ((MergePath) path).getBasicAttributeView();
 
     }
 
     @Override
     public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> aClass, LinkOption... linkOptions) throws IOException {
 
-        if(aClass.equals(BasicFileAttributes.class))
+        if(aClass.isAssignableFrom(NefeleFileAttributes.class))
             return (A) ((MergePath) path).getAttributeView().readAttributes();
 
-        return null;
+        throw new UnsupportedOperationException(aClass.getName());
 
     }
 
     @Override
     public Map<String, Object> readAttributes(Path path, String s, LinkOption... linkOptions) throws IOException {
-        throw new UnsupportedOperationException();
+
+        if(!(path instanceof MergePath))
+            throw new IllegalArgumentException();
+
+        final var index = s.indexOf(':');
+
+        return ((MergePath) path).getAttributeView().readAttributes(
+                index < 0 ? "basic" : s.substring(0, index),
+                index < 0 ? s : s.substring(index + 1));
+
     }
 
     @Override
     public void setAttribute(Path path, String s, Object o, LinkOption... linkOptions) throws IOException {
-        throw new UnsupportedOperationException();
+
+        if(!(path instanceof MergePath))
+            throw new IllegalArgumentException();
+
+        final var index = s.indexOf(':');
+
+        ((MergePath) path).getAttributeView().setAttribute(
+                index < 0 ? "basic" : s.substring(0, index),
+                index < 0 ? s : s.substring(index + 1), o);
+
     }
 }
@@ -28,29 +28,62 @@ import org.nefele.core.Mime;
 import org.nefele.utils.IdUtils;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Objects.requireNonNull;
 
 public class MergeFileTree {
 
+    public static final int DENTRY_CACHE_SIZE = 65536;
+
     private final MergeFileSystem fileSystem;
     private final MergeNode rootNode;
+    private final Map<String, MergeDentry> dentries;
+    private final ConcurrentHashMap<String, String> directories;
+    private final AtomicLong generation;
 
     public MergeFileTree(MergeFileSystem fileSystem) {
         this.fileSystem = fileSystem;
         this.rootNode = new MergeNode(MergeFileSystem.ROOT, "directory", 0, Instant.now(), Instant.now(), Instant.now(), "", "");
+        this.generation = new AtomicLong(0L);
+        this.directories = new ConcurrentHashMap<>();
+        this.dentries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MergeDentry> eldest) {
+                return size() > DENTRY_CACHE_SIZE;
+            }
+
+        });
     }
 
 
     public MergeNode resolve(String[] paths) throws MergeFileSystemException {
 
+        final var key = toKey(paths);
+        final var dentry = dentries.get(key);
+
+        if(dentry != null) {
+
+            if(dentry.node != null)
+                return dentry.node;
+
+            return new MergeNode(dentry.name, Mime.UNKNOWN.getType(), 0, Instant.now(), Instant.now(), Instant.now(), IdUtils.generateId(), dentry.parent);
+
+        }
+
+
+        final var currentGeneration = generation.get();
+
         MergeNode walker = rootNode;
         String parent = "";
         int index = 0;
+        boolean found = true;
 
         for(var path : paths) {
 
@@ -62,10 +95,7 @@ public class MergeFileTree {
 
             final var currentParent = parent;
 
-            walker = fileSystem.getStorage().getInodeStream()
-                    .filter(i -> i.getName().equals(path) && i.getParent().equals(currentParent))
-                    .findFirst()
-                    .orElse(null);
+            walker = fileSystem.getStorage().getInode(currentParent, path);
 
 
             if(walker == null) {
@@ -75,6 +105,8 @@ public class MergeFileTree {
                 else
                     throw new MergeFileSystemException("resolve failed: " + String.join(MergeFileSystem.PATH_SEPARATOR, paths));
 
+                found = false;
+
             }
 
             parent = walker.getId();
@@ -82,7 +114,18 @@ public class MergeFileTree {
         }
 
 
-        return requireNonNull(walker, "BUG! Walker cannot be null, impossible!");
+        requireNonNull(walker, "BUG! Walker cannot be null, impossible!");
+
+        synchronized (dentries) {
+
+            if(generation.get() == currentGeneration)
+                dentries.put(key, found
+                        ? new MergeDentry(walker, null, null)
+                        : new MergeDentry(null, walker.getName(), walker.getParent()));
+
+        }
+
+        return walker;
 
     }
 
@@ -91,10 +134,7 @@ public class MergeFileTree {
         if(id.isEmpty())
             return null;
 
-        var result = fileSystem.getStorage().getInodeStream()
-                .filter(i -> i.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        var result = fileSystem.getStorage().getInode(id);
 
         if(result == null)
             throw new MergeFileSystemException("resolve failed: " + id);
@@ -105,28 +145,110 @@ public class MergeFileTree {
 
     public String toAbsolutePath(MergeNode entry) throws MergeFileSystemException {
 
-        var paths = new ArrayList<String>() {{
-            add(entry.getName());
-        }};
+        if(entry.getId().isEmpty())
+            return MergeFileSystem.ROOT;
+
+        return toDirectoryPath(entry.getParent()) + MergeFileSystem.PATH_SEPARATOR + entry.getName();
+
+    }
+
+    private String toDirectoryPath(String id) throws MergeFileSystemException {
+
+        if(id.isEmpty())
+            return "";
+
+
+        var path = directories.get(id);
+
+        if(path != null)
+            return path;
+
+
+        final var currentGeneration = generation.get();
+        final var directory = resolve(id);
+
+        path = toDirectoryPath(directory.getParent()) + MergeFileSystem.PATH_SEPARATOR + directory.getName();
+
+        synchronized (dentries) {
+
+            if(generation.get() == currentGeneration)
+                directories.put(id, path);
+
+        }
+
+        return path;
+
+    }
+
+    public void invalidate(String path, boolean recursive) {
 
-        for(var parent = resolve(entry.getParent());
-                parent != null;
-                parent = resolve(parent.getParent())) {
+        final var key = toKey(path.split(MergeFileSystem.PATH_SEPARATOR));
+        final var prefix = key.endsWith(MergeFileSystem.PATH_SEPARATOR)
+                ? key
+                : key + MergeFileSystem.PATH_SEPARATOR;
+
+        synchronized (dentries) {
+
+            generation.incrementAndGet();
+
+            dentries.remove(key);
+
+            if(recursive) {
+                dentries.keySet().removeIf(i -> i.startsWith(prefix));
+                directories.values().removeIf(i -> i.equals(key) || i.startsWith(prefix));
+            }
 
-            paths.add(parent.getName());
         }
 
-        Collections.reverse(paths);
+    }
+
+    private static String toKey(String[] paths) {
+
+        final var key = new StringBuilder();
 
-        return MergeFileSystem.ROOT + String.join(MergeFileSystem.PATH_SEPARATOR, paths);
+        for(var path : paths) {
+
+            if(path.isEmpty())
+                continue;
 
+            key.append(MergeFileSystem.PATH_SEPARATOR).append(path);
+
+        }
+
+        if(key.length() == 0)
+            return MergeFileSystem.ROOT;
+
+        return key.toString();
+
+    }
+
+    public MergeRollup getRollup(MergeNode inode) {
+        return fileSystem.getStorage().getRollup(inode.getId());
+    }
+
+    public MergeRollup getRollup() {
+        return getRollup(rootNode);
     }
 
     public Set<MergeNode> listChildren(MergeNode inode) {
 
-        return fileSystem.getStorage().getInodeStream()
-                .filter(i -> i.getParent().equals(inode.getId()))
-                .collect(Collectors.toUnmodifiableSet());
+        return Set.copyOf(fileSystem.getStorage()
+                .getChildren(inode.getId()));
+
+    }
+
+
+    private static final class MergeDentry {
+
+        private final MergeNode node;
+        private final String name;
+        private final String parent;
+
+        private MergeDentry(MergeNode node, String name, String parent) {
+            this.node = node;
+            this.name = name;
+            this.parent = parent;
+        }
 
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import org.nefele.utils.CryptoUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class MergeFrameCodec {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+
+
+    private MergeFrameCodec() { }
+
+
+    public static ByteBuffer encode(ByteBuffer byteBuffer, int frameSize, boolean compressed, boolean encrypted, int level) {
+
+        if(frameSize <= 0)
+            throw new IllegalArgumentException("frameSize must be positive");
+
+
+        final int frameCount = (byteBuffer.remaining() + frameSize - 1) / frameSize;
+        final var frames = new ByteBuffer[frameCount];
+        final var plainSizes = new int[frameCount];
+
+        int encodedSize = HEADER_SIZE + ENTRY_SIZE * frameCount;
+
+        for(int i = 0; i < frameCount; i++) {
+
+            final var frame = byteBuffer.slice();
+            frame.limit(Math.min(frameSize, byteBuffer.remaining()));
+
+            byteBuffer.position(byteBuffer.position() + frame.remaining());
+
+
+            frames[i] = frame;
+            plainSizes[i] = frame.remaining();
+
+            if(compressed)
+                frames[i] = deflate(frames[i], level);
+
+            if(encrypted)
+                frames[i] = CryptoUtils.encrypt(frames[i]);
+
+            encodedSize += frames[i].remaining();
+
+        }
+
+
+        final var outputBuffer = ByteBuffer.allocate(encodedSize)
+                .putInt(frameSize)
+                .putInt(frameCount);
+
+        for(int i = 0; i < frameCount; i++) {
+
+            outputBuffer.putInt(plainSizes[i]);
+            outputBuffer.putInt(frames[i].remaining());
+
+        }
+
+        for(var frame : frames)
+            outputBuffer.put(frame);
+
+        return outputBuffer.flip();
+
+    }
+
+    public static ByteBuffer decode(FileChannel fileChannel, long offset, long length, boolean compressed, boolean encrypted) throws IOException {
+
+        final var header = read(fileChannel, 0L, HEADER_SIZE);
+
+        final int frameSize = header.getInt();
+        final int frameCount = header.getInt();
+
+        if(frameSize <= 0 || frameCount < 0 || HEADER_SIZE + (long) ENTRY_SIZE * frameCount > fileChannel.size())
+            throw new IOException("corrupted frame index");
+
+
+        final var index = read(fileChannel, HEADER_SIZE, ENTRY_SIZE * frameCount);
+
+        final int[] plainSizes = new int[frameCount];
+        final int[] encodedSizes = new int[frameCount];
+
+        long plainSize = 0L;
+
+        for(int i = 0; i < frameCount; i++) {
+
+            plainSizes[i] = index.getInt();
+            encodedSizes[i] = index.getInt();
+
+            plainSize += plainSizes[i];
+
+        }
+
+
+        if(offset >= plainSize || length <= 0L)
+            return ByteBuffer.allocate(0);
+
+
+        final int first = (int) (offset / frameSize);
+        final int last = (int) Math.min(frameCount - 1, (Math.min(plainSize, offset + length) - 1) / frameSize);
+
+        long position = HEADER_SIZE + (long) ENTRY_SIZE * frameCount;
+
+        for(int i = 0; i < first; i++)
+            position += encodedSizes[i];
+
+
+        int size = 0;
+
+        for(int i = first; i <= last; i++)
+            size += plainSizes[i];
+
+        final var bytes = new byte[size];
+
+        for(int i = first, n = 0; i <= last; i++) {
+
+            var frame = read(fileChannel, position, encodedSizes[i]);
+
+            if(encrypted)
+                frame = CryptoUtils.decrypt(frame);
+
+            if(compressed)
+                inflate(frame, bytes, n, plainSizes[i]);
+            else
+                frame.get(bytes, n, plainSizes[i]);
+
+            position += encodedSizes[i];
+            n += plainSizes[i];
+
+        }
+
+
+        final int from = (int) (offset - (long) first * frameSize);
+
+        return ByteBuffer.wrap(bytes, from, (int) Math.min(size - from, length));
+
+    }
+
+
+    private static ByteBuffer read(FileChannel fileChannel, long position, int size) throws IOException {
+
+        final var byteBuffer = ByteBuffer.allocate(size);
+
+        while(byteBuffer.hasRemaining()) {
+
+            if(fileChannel.read(byteBuffer, position + byteBuffer.position()) < 0)
+                throw new EOFException(String.format("frame truncated at %d", position + byteBuffer.position()));
+
+        }
+
+        return byteBuffer.flip();
+
+    }
+
+    private static ByteBuffer deflate(ByteBuffer byteBuffer, int level) {
+
+        final var bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.duplicate().get(bytes);
+
+
+        final var deflater = new Deflater(level, true);
+        final var outputStream = new ByteArrayOutputStream(bytes.length / 2 + 64);
+        final var buffer = new byte[8192];
+
+        try {
+
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            while(!deflater.finished())
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+
+        } finally {
+            deflater.end();
+        }
+
+        return ByteBuffer.wrap(outputStream.toByteArray());
+
+    }
+
+    private static void inflate(ByteBuffer byteBuffer, byte[] bytes, int offset, int size) throws IOException {
+
+        final var input = new byte[byteBuffer.remaining()];
+        byteBuffer.get(input);
+
+        final var inflater = new Inflater(true);
+
+        try (var inputStream = new InflaterInputStream(new ByteArrayInputStream(input), inflater)) {
+
+            if(inputStream.readNBytes(bytes, offset, size) != size)
+                throw new EOFException("frame is shorter than its index entry");
+
+        } finally {
+            inflater.end();
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import org.nefele.Application;
+
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MergeMemoryCache {
+
+    private static final double MEMORY_PRESSURE_THRESHOLD = 0.85;
+
+
+    private final LinkedHashMap<String, MergeMemoryCacheEntry> entries;
+    private final AtomicLong size;
+
+
+    public MergeMemoryCache() {
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = new AtomicLong(0L);
+
+    }
+
+
+
+    public synchronized ByteBuffer get(MergeChunk chunk) {
+
+        MergeMemoryCacheEntry entry = entries.get(chunk.getDataId());
+
+        if(entry == null || entry.revision != chunk.getRevision())
+            return null;
+
+        return entry.buffer.asReadOnlyBuffer();
+
+    }
+
+    public synchronized void put(MergeChunk chunk, long revision, ByteBuffer buffer) {
+
+        if(revision != chunk.getRevision())
+            return;
+
+        MergeMemoryCacheEntry entry = entries.put(chunk.getDataId(), new MergeMemoryCacheEntry(revision, buffer));
+
+        if(entry != null)
+            size.addAndGet(-entry.buffer.capacity());
+
+        size.addAndGet(buffer.capacity());
+
+    }
+
+    public synchronized void remove(MergeChunk chunk) {
+
+        MergeMemoryCacheEntry entry = entries.remove(chunk.getDataId());
+
+        if(entry != null)
+            size.addAndGet(-entry.buffer.capacity());
+
+    }
+
+    public synchronized void trim(long limit) {
+
+        var iterator = entries.values().iterator();
+
+        while(iterator.hasNext() && size.get() > limit) {
+
+            size.addAndGet(-iterator.next().buffer.capacity());
+            iterator.remove();
+
+        }
+
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size.set(0L);
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+
+
+    public void initialize() {
+
+        for(var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+
+            if(pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported())
+                continue;
+
+            if(pool.getUsage().getMax() <= 0L)
+                continue;
+
+            pool.setUsageThreshold((long) (pool.getUsage().getMax() * MEMORY_PRESSURE_THRESHOLD));
+
+        }
+
+
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener((notification, handback) -> {
+
+            if(!notification.getType().equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED))
+                return;
+
+            final long current = getSize();
+            trim(current / 2L);
+
+            Application.log(getClass(), "Memory pressure detected, shrinking chunk memory cache from %d to %d bytes", current, getSize());
+
+        }, null, null);
+
+    }
+
+
+
+    private static final class MergeMemoryCacheEntry {
+
+        private final long revision;
+        private final ByteBuffer buffer;
+
+        private MergeMemoryCacheEntry(long revision, ByteBuffer buffer) {
+            this.revision = revision;
+            this.buffer = buffer;
+        }
+
+    }
+
+}
@@ -27,9 +27,8 @@ package org.nefele.fs;
 import org.nefele.Invalidatable;
 
 import java.time.Instant;
-import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MergeNode implements Invalidatable {
 
@@ -41,9 +40,11 @@ public class MergeNode implements Invalidatable {
     private Instant modifiedTime;
     private String parent;
     private boolean dirty;
+    private MergeStorage storage;
 
     private final String id;
-    private final List<MergeChunk> chunks;
+    private final MergeChunkTable chunks;
+    private final AtomicBoolean queued;
 
 
     public MergeNode(String name, String mime, long size, Instant createdTime, Instant accessedTime, Instant modifiedTime, String id, String parent) {
@@ -58,7 +59,8 @@ public class MergeNode implements Invalidatable {
         this.parent = parent;
         this.dirty = false;
 
-        this.chunks = new CopyOnWriteArrayList<>();
+        this.chunks = new MergeChunkTable();
+        this.queued = new AtomicBoolean(false);
 
     }
 
@@ -83,7 +85,14 @@ public class MergeNode implements Invalidatable {
     }
 
     public void setSize(long size) {
+
+        final var delta = size - this.size;
+
         this.size = size;
+
+        if(storage != null && delta != 0L)
+            storage.resize(this, delta);
+
     }
 
     public Instant getCreatedTime() {
@@ -122,14 +131,19 @@ public class MergeNode implements Invalidatable {
         return id;
     }
 
-    public List<MergeChunk> getChunks() {
+    public MergeChunkTable getChunks() {
         return chunks;
     }
 
 
     @Override
     public void invalidate() {
+
         dirty = true;
+
+        if(storage != null && queued.compareAndSet(false, true))
+            storage.enqueue(this);
+
     }
 
     @Override
@@ -142,6 +156,19 @@ public class MergeNode implements Invalidatable {
         return dirty;
     }
 
+    void attach(MergeStorage storage) {
+
+        this.storage = storage;
+
+        if(dirty && queued.compareAndSet(false, true))
+            storage.enqueue(this);
+
+    }
+
+    void dequeue() {
+        queued.set(false);
+    }
+
 
 
     @Override
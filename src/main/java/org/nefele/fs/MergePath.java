@@ -31,23 +31,27 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributeView;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
 
 import static java.util.Objects.requireNonNull;
 
 public class MergePath implements Path {
 
+    private static final String[] EMPTY = new String[0];
+
+    private static volatile MergeFileSystem defaultFileSystem;
+
+
     private final MergeFileSystem fileSystem;
-    private final String path;
-    private final String absolutePath;
-    private final List<String> names;
     private final MergeNode inode;
-    private final BasicFileAttributeView attributeView;
+    private final String[] names;
+    private final int offset;
+    private final int count;
+    private final boolean absolute;
+    private final int hash;
+    private String path;
+    private MergeFileAttributeView attributeView;
 
 
 
@@ -58,89 +62,27 @@ public class MergePath implements Path {
 
 
         this.fileSystem = fileSystem;
-        this.path = path;
-        this.absolutePath = absolutePath;
         this.inode = requireNonNull(inode);
-        this.names = Arrays.asList(absolutePath.substring(1).split(MergeFileSystem.PATH_SEPARATOR));
-
-
-        this.attributeView = new BasicFileAttributeView() {
-
-            private final MergeNode inode = getInode();
-
-            @Override
-            public String name() {
-                return inode.getName();
-            }
-
-            @Override
-            public BasicFileAttributes readAttributes() throws IOException {
-                return new BasicFileAttributes() {
-
-                    @Override
-                    public FileTime lastModifiedTime() {
-                        return FileTime.from(inode.getModifiedTime());
-                    }
-
-                    @Override
-                    public FileTime lastAccessTime() {
-                        return FileTime.from(inode.getAccessedTime());
-                    }
-
-                    @Override
-                    public FileTime creationTime() {
-                        return FileTime.from(inode.getCreatedTime());
-                    }
-
-                    @Override
-                    public boolean isRegularFile() {
-                        return !inode.getMime().equals("directory");
-                    }
-
-                    @Override
-                    public boolean isDirectory() {
-                        return inode.getMime().equals("directory");
-                    }
-
-                    @Override
-                    public boolean isSymbolicLink() {
-                        return false;
-                    }
-
-                    @Override
-                    public boolean isOther() {
-                        return false;
-                    }
-
-                    @Override
-                    public long size() {
-                        return inode.getSize();
-                    }
+        this.names = split(absolutePath);
+        this.count = names.length;
+        this.absolute = path.startsWith(MergeFileSystem.PATH_SEPARATOR);
+        this.offset = absolute
+                ? 0
+                : Math.max(0, count - split(path).length);
 
-                    @Override
-                    public Object fileKey() {
-                        return inode;
-                    }
-                };
-            }
+        this.hash = hash(names, count);
 
-            @Override
-            public void setTimes(FileTime mtime, FileTime atime, FileTime ctime) throws IOException {
-
-                if (mtime != null)
-                    inode.setModifiedTime(mtime.toInstant());
-
-                if (atime != null)
-                    inode.setAccessedTime(atime.toInstant());
-
-                if (ctime != null)
-                    inode.setCreatedTime(ctime.toInstant());
-
-                inode.invalidate();
+    }
 
-            }
-        };
+    MergePath(MergeFileSystem fileSystem, MergeNode inode, String[] names, int offset, int count, boolean absolute) {
 
+        this.fileSystem = fileSystem;
+        this.inode = requireNonNull(inode);
+        this.names = names;
+        this.offset = offset;
+        this.count = count;
+        this.absolute = absolute;
+        this.hash = hash(names, count);
 
     }
 
@@ -151,7 +93,7 @@ public class MergePath implements Path {
 
     @Override
     public boolean isAbsolute() {
-        return path.startsWith(MergeFileSystem.PATH_SEPARATOR);
+        return absolute;
     }
 
     @Override
@@ -162,10 +104,10 @@ public class MergePath implements Path {
     @Override
     public Path getFileName() {
 
-        if(inode == null)
-            throw new UnsupportedOperationException();
+        if(count == 0)
+            return null;
 
-        return new MergePath(fileSystem, inode, absolutePath, names.get(names.size() - 1));
+        return new MergePath(fileSystem, inode, names, count - 1, count, false);
 
     }
 
@@ -174,12 +116,10 @@ public class MergePath implements Path {
 
         try {
 
-            if(names.size() == 1)
+            if(count <= 1)
                 return getRoot();
             else
-                return new MergePath(fileSystem, fileSystem.getFileTree().resolve(inode.getParent()),
-                        MergeFileSystem.ROOT + String.join(MergeFileSystem.PATH_SEPARATOR, names.subList(0, names.size() - 1)),
-                        MergeFileSystem.ROOT + String.join(MergeFileSystem.PATH_SEPARATOR, names.subList(0, names.size() - 1)));
+                return new MergePath(fileSystem, fileSystem.getFileTree().resolve(inode.getParent()), names, 0, count - 1, true);
 
         } catch (MergeFileSystemException e) {
             Application.panic(getClass(), e);
@@ -192,16 +132,16 @@ public class MergePath implements Path {
 
     @Override
     public int getNameCount() {
-        return names.size();
+        return count - offset;
     }
 
     @Override
     public Path getName(int i) {
 
-        if(i > getNameCount())
+        if(i < 0 || i >= getNameCount())
             throw new IndexOutOfBoundsException();
 
-        return new MergePath(fileSystem, inode, absolutePath, names.get(i));
+        return new MergePath(fileSystem, inode, names, offset + i, offset + i + 1, false);
 
     }
 
@@ -209,30 +149,76 @@ public class MergePath implements Path {
         return inode;
     }
 
-    public BasicFileAttributeView getAttributeView() {
+    public MergeFileAttributeView getAttributeView() {
+
+        if(attributeView == null)
+            attributeView = new MergeFileAttributeView(fileSystem, inode);
+
         return attributeView;
+
+    }
+
+    public MergeFileAttributeView getBasicAttributeView() {
+        return new MergeFileAttributeView(fileSystem, inode, "basic");
     }
 
     @Override
     public Path subpath(int i, int i1) {
-        return new MergePath(fileSystem, inode, absolutePath, String.join(MergeFileSystem.PATH_SEPARATOR, names.subList(i, i1)));
+
+        if(i < 0 || i1 > getNameCount() || i >= i1)
+            throw new IllegalArgumentException();
+
+        return new MergePath(fileSystem, inode, names, offset + i, offset + i1, false);
+
     }
 
     @Override
     public boolean startsWith(Path path) {
 
-        if(!path.isAbsolute())
+        if(!(path instanceof MergePath))
             return false;
 
-        if(!isAbsolute())
+
+        final var other = (MergePath) path;
+
+        if(other.absolute != absolute || other.getNameCount() > getNameCount())
             return false;
 
-        return path.toString().startsWith(this.path);
+        for(int i = 0; i < other.getNameCount(); i++) {
+
+            if(!names[offset + i].equals(other.names[other.offset + i]))
+                return false;
+
+        }
+
+        return true;
+
     }
 
     @Override
     public boolean endsWith(Path path) {
-        return path.toString().endsWith(this.path);
+
+        if(!(path instanceof MergePath))
+            return false;
+
+
+        final var other = (MergePath) path;
+
+        if(other.absolute)
+            return absolute && equals(other);
+
+        if(other.getNameCount() > getNameCount())
+            return false;
+
+        for(int i = 1; i <= other.getNameCount(); i++) {
+
+            if(!names[count - i].equals(other.names[other.count - i]))
+                return false;
+
+        }
+
+        return true;
+
     }
 
     @Override
@@ -242,12 +228,48 @@ public class MergePath implements Path {
 
     @Override
     public Path resolve(Path path) {
-        return get(absolutePath, path.toString());
+
+        if(path.isAbsolute())
+            return path;
+
+        return resolve(path.toString());
+
     }
 
     @Override
     public Path resolve(String other) {
-        return get(absolutePath, other);
+
+        if(other.isEmpty())
+            return this;
+
+
+        other = other.replace(FileSystems.getDefault().getSeparator(), MergeFileSystem.PATH_SEPARATOR);
+
+        final var others = split(other);
+
+        if(other.startsWith(MergeFileSystem.PATH_SEPARATOR))
+            return of(fileSystem, others);
+
+        if(others.length == 0)
+            return this;
+
+
+        final var resolved = Arrays.copyOf(names, count + others.length);
+
+        System.arraycopy(others, 0, resolved, count, others.length);
+
+        return of(fileSystem, resolved);
+
+    }
+
+    MergePath child(MergeNode inode) {
+
+        final var resolved = Arrays.copyOf(names, count + 1);
+
+        resolved[count] = inode.getName().intern();
+
+        return new MergePath(fileSystem, inode, resolved, offset, count + 1, absolute);
+
     }
 
     @Override
@@ -257,14 +279,19 @@ public class MergePath implements Path {
             throw new IllegalArgumentException();
 
 
-        MergePath mergePath = (MergePath) path;
+        final var other = (MergePath) path;
+
+        if(other.count < count)
+            return new MergePath(fileSystem, other.inode, other.names, 0, other.count, false);
 
-        String relativePath = mergePath.absolutePath
-                .replaceFirst(absolutePath, "")
-                .replaceFirst("^.", "");
+        for(int i = 0; i < count; i++) {
 
+            if(!names[i].equals(other.names[i]))
+                return new MergePath(fileSystem, other.inode, other.names, 0, other.count, false);
+
+        }
 
-        return new MergePath(fileSystem, mergePath.getInode(), mergePath.absolutePath, relativePath);
+        return new MergePath(fileSystem, other.inode, other.names, count, other.count, false);
 
     }
 
@@ -272,16 +299,21 @@ public class MergePath implements Path {
     public URI toUri() {
 
         try {
-            return new URI(fileSystem.provider().getScheme(), "", absolutePath, null, null);
+            return new URI(fileSystem.provider().getScheme(), "", toAbsolutePath().toString(), null, null);
         } catch (URISyntaxException ignored) { }
 
-        throw new IllegalArgumentException(absolutePath);
+        throw new IllegalArgumentException(toAbsolutePath().toString());
 
     }
 
     @Override
     public Path toAbsolutePath() {
-        return new MergePath(fileSystem, inode, absolutePath, absolutePath);
+
+        if(absolute && offset == 0)
+            return this;
+
+        return new MergePath(fileSystem, inode, names, 0, count, true);
+
     }
 
     @Override
@@ -310,18 +342,38 @@ public class MergePath implements Path {
         if(!path.isAbsolute())
             return path.toString().charAt(0) - MergeFileSystem.PATH_SEPARATOR_CHAR;
 
-        return this.path.compareTo(path.toString());
+        return toString().compareTo(path.toString());
 
     }
 
     @Override
     public String toString() {
-        return path;
+
+        if(path != null)
+            return path;
+
+
+        final var builder = new StringBuilder();
+
+        for(int i = offset; i < count; i++) {
+
+            if(absolute || i > offset)
+                builder.append(MergeFileSystem.PATH_SEPARATOR_CHAR);
+
+            builder.append(names[i]);
+
+        }
+
+        if(absolute && count == 0)
+            builder.append(MergeFileSystem.PATH_SEPARATOR_CHAR);
+
+        return path = builder.toString();
+
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(path);
+        return hash;
     }
 
     @Override
@@ -329,8 +381,56 @@ public class MergePath implements Path {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MergePath paths = (MergePath) o;
-        return getFileSystem().equals(paths.getFileSystem()) &&
-                absolutePath.equals(paths.absolutePath);
+        return hash == paths.hash &&
+                getFileSystem().equals(paths.getFileSystem()) &&
+                Arrays.equals(names, 0, count, paths.names, 0, paths.count);
+    }
+
+
+    static MergePath of(MergeFileSystem fileSystem, String[] names) {
+
+        try {
+            return new MergePath(fileSystem, fileSystem.getFileTree().resolve(names), names, 0, names.length, true);
+        } catch (FileSystemException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+
+    }
+
+    static String[] split(String path) {
+
+        final var names = new ArrayList<String>();
+
+        int begin = 0;
+
+        for(int i = 0; i <= path.length(); i++) {
+
+            if(i < path.length() && path.charAt(i) != MergeFileSystem.PATH_SEPARATOR_CHAR)
+                continue;
+
+            if(i > begin)
+                names.add(path.substring(begin, i).intern());
+
+            begin = i + 1;
+
+        }
+
+        if(names.isEmpty())
+            return EMPTY;
+
+        return names.toArray(EMPTY);
+
+    }
+
+    private static int hash(String[] names, int count) {
+
+        int hash = 1;
+
+        for(int i = 0; i < count; i++)
+            hash = 31 * hash + names[i].hashCode();
+
+        return hash;
+
     }
 
 
@@ -339,14 +439,16 @@ public class MergePath implements Path {
         String path = String
                 .join(MergeFileSystem.PATH_SEPARATOR, strings)
                 .replace(FileSystems.getDefault().getSeparator(), MergeFileSystem.PATH_SEPARATOR)
-                .replace("//", MergeFileSystem.PATH_SEPARATOR)
                 .trim();
 
-        try {
-            return Path.of(new URI("nefele", "", path, null));
-        } catch (URISyntaxException e) {
-            throw new IllegalArgumentException();
-        }
+        if(!path.startsWith(MergeFileSystem.PATH_SEPARATOR))
+            throw new IllegalArgumentException(path);
+
+
+        if(defaultFileSystem == null)
+            defaultFileSystem = (MergeFileSystem) FileSystems.getFileSystem(URI.create("nefele:///"));
+
+        return of(defaultFileSystem, split(path));
 
     }
 
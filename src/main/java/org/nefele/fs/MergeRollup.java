@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2020 Nefele <https://github.com/nefele-org>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.nefele.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MergeRollup {
+
+    private final AtomicLong size;
+    private final AtomicLong storedSize;
+    private final AtomicLong cachedSize;
+    private final AtomicLong files;
+    private final AtomicLong folders;
+    private final AtomicLong folderSize;
+
+
+    public MergeRollup() {
+        this.size = new AtomicLong(0L);
+        this.storedSize = new AtomicLong(0L);
+        this.cachedSize = new AtomicLong(0L);
+        this.files = new AtomicLong(0L);
+        this.folders = new AtomicLong(0L);
+        this.folderSize = new AtomicLong(0L);
+    }
+
+
+    void add(long size, long storedSize, long cachedSize, long files, long folders, long folderSize) {
+        this.size.addAndGet(size);
+        this.storedSize.addAndGet(storedSize);
+        this.cachedSize.addAndGet(cachedSize);
+        this.files.addAndGet(files);
+        this.folders.addAndGet(folders);
+        this.folderSize.addAndGet(folderSize);
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getStoredSize() {
+        return storedSize.get();
+    }
+
+    public long getCachedSize() {
+        return cachedSize.get();
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getFolders() {
+        return folders.get();
+    }
+
+    public long getFolderSize() {
+        return folderSize.get();
+    }
+
+}
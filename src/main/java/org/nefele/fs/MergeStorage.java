@@ -28,23 +28,52 @@ import org.nefele.Application;
 import org.nefele.ApplicationService;
 import org.nefele.ApplicationTask;
 import org.nefele.cloud.*;
+import org.nefele.core.Mime;
 import org.nefele.utils.CryptoUtils;
 import org.nefele.utils.IdUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -52,242 +81,1465 @@ import java.util.zip.InflaterInputStream;
 
 public class MergeStorage implements ApplicationService {
 
+    private static final long COLLECT_BACKOFF = 5000L;
+    private static final long COLLECT_BACKOFF_MAX = 600000L;
+
+
+    private final ConcurrentHashMap<String, MergeNode> inodes;
+    private final ConcurrentHashMap<String, MergeChunk> chunks;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, MergeNode>> directories;
+    private final ConcurrentHashMap<String, MergeRollup> rollups;
+    private final ConcurrentLinkedQueue<MergeNode> dirtyNodes;
+    private final ConcurrentLinkedQueue<MergeChunk> dirtyChunks;
+    private final ConcurrentLinkedQueue<MergeNode> dustNodes;
+    private final ConcurrentLinkedQueue<MergeChunk> dustChunks;
+    private final ConcurrentLinkedQueue<MergeChunk> dustData;
+    private final ConcurrentLinkedQueue<MergeChunk> garbage;
+    private final ConcurrentLinkedQueue<MergeChunk> collected;
+    private final ConcurrentLinkedQueue<MergeNode> uploads;
+    private final ConcurrentHashMap<String, Map.Entry<Integer, Long>> retries;
+    private final AtomicBoolean collecting;
+    private final ConcurrentHashMap<String, Set<MergeChunk>> references;
+    private final ConcurrentHashMap<String, String> hashes;
+    private final ConcurrentHashMap<String, Long> stored;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> fetches;
+    private final ConcurrentHashMap<String, ThreadPoolExecutor> workers;
+    private final AtomicLong fetchLatency;
+    private final AtomicLong buffered;
+    private final AtomicLong storedSize;
+    private final Path cachePath;
+    private final MergeCache cache;
+    private final MergeMemoryCache memory;
+
+
+    public MergeStorage() {
+
+        this.inodes = new ConcurrentHashMap<>();
+        this.chunks = new ConcurrentHashMap<>();
+        this.directories = new ConcurrentHashMap<>();
+        this.rollups = new ConcurrentHashMap<>();
+        this.dirtyNodes = new ConcurrentLinkedQueue<>();
+        this.dirtyChunks = new ConcurrentLinkedQueue<>();
+        this.dustNodes = new ConcurrentLinkedQueue<>();
+        this.dustChunks = new ConcurrentLinkedQueue<>();
+        this.dustData = new ConcurrentLinkedQueue<>();
+        this.garbage = new ConcurrentLinkedQueue<>();
+        this.collected = new ConcurrentLinkedQueue<>();
+        this.uploads = new ConcurrentLinkedQueue<>();
+        this.retries = new ConcurrentHashMap<>();
+        this.collecting = new AtomicBoolean(false);
+        this.references = new ConcurrentHashMap<>();
+        this.hashes = new ConcurrentHashMap<>();
+        this.stored = new ConcurrentHashMap<>();
+        this.fetches = new ConcurrentHashMap<>();
+        this.workers = new ConcurrentHashMap<>();
+        this.fetchLatency = new AtomicLong(0L);
+        this.buffered = new AtomicLong(0L);
+        this.storedSize = new AtomicLong(0L);
+        this.cachePath = Application.getInstance().getDataPath().resolve("cache");
+        this.cache = new MergeCache(cachePath);
+        this.memory = new MergeMemoryCache();
+
+        this.cache.setListener(this::recount);
+
+    }
+
+
+    public ConcurrentHashMap<String, MergeNode> getInodes() {
+        return inodes;
+    }
+
+    public ConcurrentHashMap<String, MergeChunk> getChunks() {
+        return chunks;
+    }
+
+    public MergeNode getInode(String id) {
+        return inodes.get(id);
+    }
+
+    public MergeChunk getChunk(String id) {
+        return chunks.get(id);
+    }
+
+    public MergeNode getInode(String parent, String name) {
+
+        final var directory = directories.get(parent);
+
+        if(directory == null)
+            return null;
+
+        return directory.get(name);
+
+    }
+
+    public Collection<MergeNode> getChildren(String parent) {
+
+        final var directory = directories.get(parent);
+
+        if(directory == null)
+            return Collections.emptySet();
+
+        return Collections.unmodifiableCollection(directory.values());
+
+    }
+
+    private void bind(MergeNode node) {
+
+        directories.compute(node.getParent(), (k, v) -> {
+
+            if(v == null)
+                v = new ConcurrentHashMap<>();
+
+            v.put(node.getName(), node);
+            return v;
+
+        });
+
+    }
+
+    private void unbind(MergeNode node) {
+
+        directories.computeIfPresent(node.getParent(), (k, v) -> {
+
+            v.remove(node.getName(), node);
+
+            return v.isEmpty()
+                    ? null
+                    : v;
+
+        });
+
+    }
+
+    public MergeRollup getRollup(String id) {
+
+        final var rollup = rollups.get(id);
+
+        if(rollup == null)
+            return new MergeRollup();
+
+        return rollup;
+
+    }
+
+    private void propagate(String parent, long size, long storedSize, long cachedSize, long files, long folders, long folderSize) {
+
+        for(var id = parent; id != null; ) {
+
+            rollups.computeIfAbsent(id, k -> new MergeRollup())
+                    .add(size, storedSize, cachedSize, files, folders, folderSize);
+
+            if(id.isEmpty())
+                break;
+
+            final var node = getInode(id);
+
+            id = node != null
+                    ? node.getParent()
+                    : null;
+
+        }
+
+    }
+
+    private void contribute(MergeNode node, long sign, boolean recursive) {
+
+        if(Mime.FOLDER.getType().equals(node.getMime())) {
+
+            final var rollup = recursive
+                    ? rollups.get(node.getId())
+                    : null;
+
+            if(rollup == null)
+                propagate(node.getParent(), 0L, 0L, 0L, 0L, sign, sign * node.getSize());
+            else
+                propagate(node.getParent(),
+                        sign * rollup.getSize(),
+                        sign * rollup.getStoredSize(),
+                        sign * rollup.getCachedSize(),
+                        sign * rollup.getFiles(),
+                        sign * (rollup.getFolders() + 1L),
+                        sign * (rollup.getFolderSize() + node.getSize()));
+
+        } else {
+
+            long storedSize = 0L;
+            long cachedSize = 0L;
+
+            for(var chunk : node.getChunks()) {
+                storedSize += chunk.getAccountedSize();
+                cachedSize += chunk.getAccountedCache();
+            }
+
+            propagate(node.getParent(), sign * node.getSize(), sign * storedSize, sign * cachedSize, sign, 0L, 0L);
+
+        }
+
+    }
+
+    private void account(MergeChunk chunk) {
+
+        synchronized (rollups) {
+
+            final var size = chunk.getSize();
+            final var cached = getCache().contains(chunk.getDataId())
+                    ? size
+                    : 0L;
+
+            final var storedDelta = size - chunk.getAccountedSize();
+            final var cachedDelta = cached - chunk.getAccountedCache();
+
+            chunk.setAccounted(size, cached);
+
+            if(storedDelta == 0L && cachedDelta == 0L)
+                return;
+
+            if(getChunk(chunk.getId()) == chunk && getInode(chunk.getInode().getId()) == chunk.getInode())
+                propagate(chunk.getInode().getParent(), 0L, storedDelta, cachedDelta, 0L, 0L, 0L);
+
+        }
+
+    }
+
+    private void recount(String dataId) {
+
+        final var refs = references.get(dataId);
+
+        if(refs == null)
+            return;
+
+        for(var chunk : refs)
+            account(chunk);
+
+    }
+
+    void resize(MergeNode node, long delta) {
+
+        synchronized (rollups) {
+
+            if(getInode(node.getId()) != node)
+                return;
+
+            if(Mime.FOLDER.getType().equals(node.getMime()))
+                propagate(node.getParent(), 0L, 0L, 0L, 0L, 0L, delta);
+            else
+                propagate(node.getParent(), delta, 0L, 0L, 0L, 0L, 0L);
+
+        }
+
+    }
+
+    private void track(MergeChunk chunk) {
+
+        final var previous = stored.put(chunk.getDataId(), chunk.getSize());
+
+        storedSize.addAndGet(chunk.getSize() - (previous != null
+                ? previous
+                : 0L));
+
+    }
+
+    private void untrack(String dataId) {
+
+        final var previous = stored.remove(dataId);
+
+        if(previous != null)
+            storedSize.addAndGet(-previous);
+
+    }
+
+    public long getStoredSize() {
+        return storedSize.get();
+    }
+
+    public Stream<MergeNode> getInodeStream() {
+        return inodes.values().stream();
+    }
+
+    public Stream<MergeChunk> getChunkStream() {
+        return chunks.values().stream();
+    }
+
+    public MergeCache getCache() {
+        return cache;
+    }
+
+    public MergeMemoryCache getMemory() {
+        return memory;
+    }
+
+
+
+    public void write(MergeChunk chunk, ByteBuffer byteBuffer, long offset, boolean raw) throws IOException {
+
+        String pinned = null;
+
+        try {
+
+            if(offset != 0L && !raw)
+                throw new IllegalArgumentException("offset must be 0 for encoded chunks");
+
+            final var transformed = chunk.isCompressed() || chunk.isEncrypted();
+
+            final var partial = raw && chunk.getSize() > 0L && (offset != 0L
+                    || byteBuffer.remaining() < (transformed ? MergeChunk.getDefaultSize() : chunk.getSize()));
+
+            if(partial)
+                pinned = require(chunk);
+
+            final var cached = isCached(chunk) && chunk.getSize() > 0L;
+
+            if(partial && !cached)
+                throw new IOException(String.format("chunk %s must be cached to be partially written", chunk.getId()));
+
+            if(raw)
+                unshare(chunk);
+
+
+            long checksum;
+
+            if(raw) {
+
+                ByteBuffer plainBuffer = null;
+
+                if(!cached)
+                    plainBuffer = pad(byteBuffer, offset);
+                else if(transformed)
+                    plainBuffer = overlay(chunk, byteBuffer, offset);
+
+
+                forget(chunk);
+
+                chunk.setHash(plainBuffer != null
+                        ? CryptoUtils.hash(plainBuffer)
+                        : null);
+
+                if(chunk.getHash() != null && link(chunk)) {
+
+                    account(chunk);
+
+                    chunk.invalidate();
+                    return;
+
+                }
+
+
+                getCache().put(chunk, MergeCache.CACHE_STATE_DIRTY);
+                getMemory().remove(chunk);
+
+                if(!transformed)
+                    checksum = writeAt(chunk, byteBuffer, offset, cached);
+                else
+                    checksum = writeEncoded(chunk, plainBuffer, true);
+
+                chunk.nextRevision();
+
+            } else {
+
+                getCache().put(chunk, MergeCache.CACHE_STATE_DIRTY);
+                getMemory().remove(chunk);
+
+                checksum = writeEncoded(chunk, byteBuffer, false);
+
+            }
+
+
+            chunk.setSize(Files.size(cachePath.resolve(chunk.getDataId())));
+            chunk.invalidate();
+
+            index(chunk);
+            track(chunk);
+
+            getCache().put(chunk, raw
+                    ? MergeCache.CACHE_STATE_DIRTY
+                    : MergeCache.CACHE_STATE_CLEAN, checksum);
+
+            getCache().trim(getCacheLimit());
+
+        } catch (IOException e) {
+            Application.log(getClass(), e,"write()");
+            throw e;
+
+        } finally {
+
+            if(pinned != null)
+                getCache().unpin(pinned);
+
+        }
+
+    }
+
+    private long writeAt(MergeChunk chunk, ByteBuffer byteBuffer, long offset, boolean cached) throws IOException {
+
+        final var options = cached
+                ? Set.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+                : Set.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        final var whole = !cached && offset == 0L;
+        final var crc = new CRC32();
+
+        if(whole)
+            crc.update(byteBuffer.duplicate());
+
+
+        try (FileChannel fileChannel = FileChannel.open(cachePath.resolve(chunk.getDataId()), options)) {
+
+            while(byteBuffer.hasRemaining())
+                offset += fileChannel.write(byteBuffer, offset);
+
+        }
+
+
+        if(whole)
+            return crc.getValue();
+
+        return MergeCache.checksum(cachePath.resolve(chunk.getDataId()));
+
+    }
+
+    private long writeEncoded(MergeChunk chunk, ByteBuffer byteBuffer, boolean raw) throws IOException {
+
+        if(chunk.isFramed() && raw) {
+
+            return writeAt(chunk, MergeFrameCodec.encode(byteBuffer, getFrameSize(), chunk.isCompressed(), chunk.isEncrypted(),
+                    Application.getInstance().getConfig()
+                            .getInteger("core.mfs.compression.level")
+                            .orElse(Deflater.DEFAULT_COMPRESSION)), 0L, false);
+
+        }
+
+        if(chunk.isEncrypted() && raw)
+            byteBuffer = CryptoUtils.encrypt(byteBuffer);
+
+
+
+        final var checkedStream = new CheckedOutputStream(Files.newOutputStream(cachePath.resolve(chunk.getDataId()),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        ), new CRC32());
+
+        OutputStream outputStream;
+
+        if(chunk.isCompressed() && raw) {
+            outputStream = new DeflaterOutputStream(checkedStream, new Deflater(Application.getInstance().getConfig()
+                    .getInteger("core.mfs.compression.level")
+                    .orElse(Deflater.DEFAULT_COMPRESSION), true));
+
+        } else {
+            outputStream = checkedStream;
+        }
+
+
+        while(byteBuffer.hasRemaining()) {
+
+            var bytes = new byte[Math.min(65536, byteBuffer.remaining())];
+
+            byteBuffer.get(bytes);
+            outputStream.write(bytes);
+
+        }
+
+        outputStream.flush();
+        outputStream.close();
+
+        return checkedStream.getChecksum().getValue();
+
+    }
+
+    private ByteBuffer overlay(MergeChunk chunk, ByteBuffer byteBuffer, long offset) throws IOException {
+
+        final byte[] bytes;
+
+        try (InputStream inputStream = read(chunk, false)) {
+            bytes = inputStream.readAllBytes();
+        }
+
+
+        ByteBuffer outputBuffer = ByteBuffer
+                .allocate((int) Math.max(bytes.length, offset + byteBuffer.remaining()));
+
+        outputBuffer.put(bytes);
+        outputBuffer.position((int) offset);
+        outputBuffer.put(byteBuffer);
+
+        return outputBuffer.rewind();
+
+    }
+
+    private ByteBuffer pad(ByteBuffer byteBuffer, long offset) {
+
+        if(offset == 0L)
+            return byteBuffer;
+
+
+        ByteBuffer outputBuffer = ByteBuffer
+                .allocate((int) (offset + byteBuffer.remaining()));
+
+        outputBuffer.position((int) offset);
+        outputBuffer.put(byteBuffer.duplicate());
+
+        return outputBuffer.rewind();
+
+    }
+
+    public InputStream read(MergeChunk chunk, boolean raw) throws IOException {
+
+        try {
+
+            if(!isCached(chunk))
+                throw new NoSuchFileException(cachePath.resolve(chunk.getDataId()).toString());
+
+            if(chunk.isFramed() && !raw) {
+
+                final var byteBuffer = decode(chunk, 0L, Long.MAX_VALUE);
+
+                getCache().touch(chunk);
+
+                return new ByteArrayInputStream(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+
+            }
+
+
+            InputStream inputStream = Files.newInputStream(cachePath.resolve(chunk.getDataId()));
+
+            getCache().touch(chunk);
+
+            if(chunk.isCompressed() && !raw)
+                inputStream = new InflaterInputStream(inputStream, new Inflater(true));
+
+            if(chunk.isEncrypted() && !raw)
+                inputStream = CryptoUtils.decrypt(inputStream);
+
+            return inputStream;
+
+        } catch (NoSuchFileException e) {
+            Application.log(getClass(), e, "read()");
+            getCache().remove(chunk);
+            throw e;
+        } catch (IOException e) {
+            Application.log(getClass(), e, "read()");
+            throw e;
+        }
+
+    }
+
+    public ByteBuffer read(MergeChunk chunk, long offset, int length) throws IOException {
+
+        ByteBuffer byteBuffer = getMemory().get(chunk);
+
+        if(byteBuffer != null)
+            getCache().touch(chunk);
+
+        else if(chunk.isFramed()) {
+
+            final var pinned = require(chunk);
+
+            try {
+
+                if(!isCached(chunk))
+                    throw new NoSuchFileException(cachePath.resolve(chunk.getDataId()).toString());
+
+                byteBuffer = decode(chunk, offset, length);
+
+                getCache().touch(chunk);
+                return byteBuffer;
+
+            } catch (NoSuchFileException e) {
+                Application.log(getClass(), e, "read()");
+                getCache().remove(chunk);
+                throw e;
+            } catch (IOException e) {
+                Application.log(getClass(), e, "read()");
+                throw e;
+            } finally {
+                getCache().unpin(pinned);
+            }
+
+        } else
+            byteBuffer = read(chunk);
+
+
+        byteBuffer.position((int) Math.min(offset, byteBuffer.limit()));
+        byteBuffer.limit((int) Math.min(byteBuffer.limit(), offset + length));
+
+        return byteBuffer;
+
+    }
+
+    private ByteBuffer decode(MergeChunk chunk, long offset, long length) throws IOException {
+
+        try (FileChannel fileChannel = FileChannel.open(cachePath.resolve(chunk.getDataId()), StandardOpenOption.READ)) {
+            return MergeFrameCodec.decode(fileChannel, offset, length, chunk.isCompressed(), chunk.isEncrypted());
+        }
+
+    }
+
+    public MappedByteBuffer map(MergeChunk chunk, long offset, long size) throws IOException {
+
+        if(chunk.isCompressed() || chunk.isEncrypted())
+            throw new UnsupportedOperationException(String.format("chunk %s is compressed or encrypted", chunk.getId()));
+
+        final var pinned = require(chunk);
+
+        try {
+
+            if(!isCached(chunk))
+                throw new NoSuchFileException(cachePath.resolve(chunk.getDataId()).toString());
+
+            try (FileChannel fileChannel = FileChannel.open(cachePath.resolve(chunk.getDataId()), StandardOpenOption.READ)) {
+
+                getCache().touch(chunk);
+
+                return fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, size < 0L
+                        ? fileChannel.size() - offset
+                        : size);
+
+            }
+
+        } catch (NoSuchFileException e) {
+            Application.log(getClass(), e, "map()");
+            getCache().remove(chunk);
+            throw e;
+        } catch (IOException e) {
+            Application.log(getClass(), e, "map()");
+            throw e;
+        } finally {
+            getCache().unpin(pinned);
+        }
+
+    }
+
+    private ByteBuffer readCached(MergeChunk chunk) throws IOException {
+
+        try {
+
+            if(!isCached(chunk))
+                throw new NoSuchFileException(cachePath.resolve(chunk.getDataId()).toString());
+
+            try (FileChannel fileChannel = FileChannel.open(cachePath.resolve(chunk.getDataId()), StandardOpenOption.READ)) {
+
+                getCache().touch(chunk);
+
+                final var byteBuffer = ByteBuffer.allocateDirect((int) fileChannel.size());
+
+                while(byteBuffer.hasRemaining()) {
+
+                    if(fileChannel.read(byteBuffer) < 0)
+                        break;
+
+                }
+
+                return byteBuffer.flip();
+
+            }
+
+        } catch (NoSuchFileException e) {
+            Application.log(getClass(), e, "read()");
+            getCache().remove(chunk);
+            throw e;
+        } catch (IOException e) {
+            Application.log(getClass(), e, "read()");
+            throw e;
+        }
+
+    }
+
+    public long transferTo(MergeChunk chunk, long offset, long count, WritableByteChannel target) throws IOException {
+
+        if(chunk.isCompressed() || chunk.isEncrypted())
+            return -1L;
+
+        final var pinned = require(chunk);
+
+
+        try (FileChannel fileChannel = FileChannel.open(cachePath.resolve(chunk.getDataId()), StandardOpenOption.READ)) {
+
+            getCache().touch(chunk);
+
+            long transferred = 0L;
+
+            while(transferred < count) {
+
+                final long n = fileChannel.transferTo(offset + transferred, count - transferred, target);
+
+                if(n <= 0L)
+                    break;
+
+                transferred += n;
+
+            }
+
+            return transferred;
+
+        } catch (NoSuchFileException e) {
+            Application.log(getClass(), e, "transferTo()");
+            getCache().remove(chunk);
+            throw e;
+        } catch (IOException e) {
+            Application.log(getClass(), e, "transferTo()");
+            throw e;
+        } finally {
+            getCache().unpin(pinned);
+        }
+
+    }
+
+    public ByteBuffer read(MergeChunk chunk) throws IOException {
+
+        ByteBuffer byteBuffer;
+
+        if((byteBuffer = getMemory().get(chunk)) != null) {
+            getCache().touch(chunk);
+            return byteBuffer;
+        }
+
+        final var pinned = require(chunk);
+
+        try {
+            return load(chunk);
+        } finally {
+            getCache().unpin(pinned);
+        }
+
+    }
+
+    private ByteBuffer load(MergeChunk chunk) throws IOException {
+
+        ByteBuffer byteBuffer;
+
+        final long revision = chunk.getRevision();
+
+        if(!chunk.isCompressed() && !chunk.isEncrypted())
+            byteBuffer = readCached(chunk);
+
+        else {
+
+            try (InputStream inputStream = read(chunk, false)) {
+
+                final var bytes = inputStream.readAllBytes();
+
+                byteBuffer = ByteBuffer.allocateDirect(bytes.length)
+                        .put(bytes)
+                        .flip();
+
+            }
+
+        }
+
+
+        if(byteBuffer.capacity() <= getMemoryLimit()) {
+
+            getMemory().put(chunk, revision, byteBuffer);
+            getMemory().trim(getMemoryLimit());
+
+        }
+
+        return byteBuffer.asReadOnlyBuffer();
+
+    }
+
+    public void fetch(MergeChunk chunk) throws IOException {
+
+        if(isCached(chunk))
+            return;
+
+
+        while(true) {
+
+            try {
+
+                final var started = System.nanoTime();
+
+                ByteBuffer byteBuffer = chunk.getDriveProvider().readChunk(chunk, new TransferInfoCallback() {
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+
+                    @Override
+                    public void updateProgress(int progress) { }
+
+                });
+
+                write(chunk, byteBuffer, 0, false);
+
+                final var elapsed = System.nanoTime() - started;
+                fetchLatency.getAndUpdate(i -> i == 0L ? elapsed : (i * 3L + elapsed) / 4L);
+
+                break;
+
+            } catch (TransferInfoTryAgainException e) {
+                Application.log(getClass(), "WARNING! %s for %s: %s", e.getClass().getName(), chunk.getId(), e.getMessage());
+
+            } catch (TransferInfoException e) {
+                throw new IOException(e);
+            }
+
+        }
+
+    }
+
+    public void prefetch(MergeChunk chunk) {
+
+        final var future = new CompletableFuture<Void>();
+
+        if(fetches.putIfAbsent(chunk.getDataId(), future) != null)
+            return;
+
+
+        final var pinned = chunk.getDataId();
+
+        getExecutor(chunk.getDriveProvider()).execute(() -> {
+
+            getCache().pin(pinned);
+
+            try {
+
+                fetch(chunk);
+
+                if(getMemory().get(chunk) == null)
+                    load(chunk);
+
+                future.complete(null);
+
+            } catch (IOException | RuntimeException e) {
+                Application.log(getClass(), e, "prefetch()");
+                future.completeExceptionally(e);
+
+            } finally {
+                fetches.remove(pinned, future);
+                getCache().unpin(pinned);
+            }
+
+        });
+
+    }
+
+    private ExecutorService getExecutor(DriveProvider driveProvider) {
+
+        return workers.computeIfAbsent(driveProvider.getId(), id -> {
+
+            final var threads = Math.max(1, driveProvider.getMaxConnections());
+
+            final var executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+
+                final var thread = new Thread(r, "MergeStorage::" + id);
+                thread.setDaemon(true);
+
+                return thread;
+
+            });
+
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+
+        });
+
+    }
+
+    public long getFetchLatency() {
+        return fetchLatency.get();
+    }
+
+    public boolean await(MergeChunk chunk) throws IOException {
+
+        final var future = fetches.get(chunk.getDataId());
+
+        if(future == null)
+            return false;
+
+        join(future);
+        return true;
+
+    }
+
+    public String require(MergeChunk chunk) throws IOException {
+
+        final var dataId = chunk.getDataId();
+
+        getCache().pin(dataId);
+
+        try {
+
+            if(isCached(chunk))
+                return dataId;
+
+
+            final var inflight = fetches.get(dataId);
+
+            if(inflight != null) {
+
+                try {
+                    join(inflight);
+                } catch (IOException ignored) { }
+
+            }
+
+            if(!isCached(chunk))
+                download(chunk);
+
+            if(!isCached(chunk))
+                throw new NoSuchFileException(cachePath.resolve(dataId).toString());
+
+            return dataId;
+
+        } catch (IOException | RuntimeException e) {
+            getCache().unpin(dataId);
+            throw e;
+        }
+
+    }
+
+    private void download(MergeChunk chunk) throws IOException {
+
+        final var future = new CompletableFuture<Void>();
+        final var inflight = fetches.putIfAbsent(chunk.getDataId(), future);
+
+        if(inflight != null) {
+            join(inflight);
+            return;
+        }
+
+
+        try {
+
+            fetch(chunk);
+            future.complete(null);
+
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+
+        } finally {
+            fetches.remove(chunk.getDataId(), future);
+        }
+
+    }
+
+    private static void join(CompletableFuture<Void> future) throws IOException {
+
+        try {
+
+            future.get();
+
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+
+        } catch (ExecutionException e) {
+
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+
+            throw new IOException(e.getCause());
+
+        }
+
+    }
+
+    public void free(MergeChunk chunk) {
+
+        try {
+
+            synchronized (rollups) {
+
+                if(getChunks().remove(chunk.getId(), chunk) && getInode(chunk.getInode().getId()) == chunk.getInode())
+                    propagate(chunk.getInode().getParent(), 0L, -chunk.getAccountedSize(), -chunk.getAccountedCache(), 0L, 0L, 0L);
+
+                chunk.getInode().getChunks().remove(chunk);
+
+            }
+
+            chunk.getInode().invalidate();
+
+            MergeChunk orphan;
+
+            synchronized (references) {
+                orphan = release(chunk);
+            }
+
+            if(orphan != null)
+                destroy(orphan);
+
+        } finally {
+            dustChunks.add(chunk);
+        }
+
+    }
+
+    public void free(MergeNode node, boolean clearData) {
+
+        try {
+
+            synchronized (rollups) {
+
+                if(getInodes().remove(node.getId(), node)) {
+
+                    unbind(node);
+                    contribute(node, -1L, false);
+
+                    rollups.remove(node.getId());
+
+                }
+
+            }
+
+            if(clearData) {
+                for(var chunk : node.getChunks())
+                    free(chunk);
+            }
+
+        } finally {
+            dustNodes.add(node);
+        }
+
+    }
+
+
+    public void create(MergeNode node) {
+
+        synchronized (rollups) {
+
+            final var previous = getInodes().put(node.getId(), node);
+
+            if(previous != null) {
+                unbind(previous);
+                contribute(previous, -1L, false);
+            }
+
+            bind(node);
+            contribute(node, 1L, false);
+
+        }
+
+        node.attach(this);
+
+    }
+
+    public void move(MergeNode node, String parent, String name) {
+
+        synchronized (rollups) {
+
+            unbind(node);
+            contribute(node, -1L, true);
+
+            node.setParent(parent);
+            node.setName(name);
+
+            contribute(node, 1L, true);
+            bind(node);
+
+        }
+
+        node.invalidate();
+
+    }
+
+    void enqueue(MergeNode node) {
+        dirtyNodes.add(node);
+    }
+
+    void enqueue(MergeChunk chunk) {
+        dirtyChunks.add(chunk);
+    }
+
+
+
+    public MergeChunk alloc(MergeNode node, long offset) throws IOException {
+
+        try {
+
+            DriveProvider driveProvider = DriveProviders.getInstance().nextAllocatable();
+
+            final var id = IdUtils.generateId();
+
+            final var compressed = Application.getInstance().getConfig().getBoolean("core.mfs.compression.enable").orElse(false);
+            final var encrypted = Application.getInstance().getConfig().getBoolean("core.mfs.encryption.enable").orElse(false);
+
+            MergeChunk chunk = new MergeChunk(
+                    id, offset, node, driveProvider, 0L, 0L,
+                    compressed, encrypted, compressed || encrypted,
+                    id, null
+            );
+
+
+            final var existing = node.getChunks().putIfAbsent(chunk);
+
+            if(existing != null)
+                return existing;
+
+
+            getChunks().put(chunk.getId(), chunk);
+
+            chunk.attach(this);
+            reference(chunk);
+
+            driveProvider.setChunks(driveProvider.getChunks() + 1L);
+            driveProvider.invalidate();
+
+            chunk.invalidate();
+            return chunk;
+
+        } catch (DriveFullException | DriveNotFoundException e) {
+            Application.log(getClass(), e, "alloc()");
+            throw e;
+        }
+
+    }
+
+
+
+    public int getReferences(MergeChunk chunk) {
+
+        final var refs = references.get(chunk.getDataId());
+
+        if(refs == null)
+            return 0;
+
+        return refs.size();
+
+    }
+
+    public MergeChunk share(MergeChunk chunk, MergeNode node) {
+
+        synchronized (references) {
+
+            MergeChunk shared = new MergeChunk(
+                    IdUtils.generateId(), chunk.getOffset(), node, chunk.getDriveProvider(),
+                    chunk.getRevision(), chunk.getSize(), chunk.isCompressed(), chunk.isEncrypted(), chunk.isFramed(),
+                    chunk.getDataId(), chunk.getHash()
+            );
+
+
+            getChunks().put(shared.getId(), shared);
+            node.getChunks().add(shared);
+
+            shared.attach(this);
+            reference(shared);
+            account(shared);
+
+            shared.invalidate();
+            return shared;
+
+        }
+
+    }
+
+    private void reference(MergeChunk chunk) {
+        references.computeIfAbsent(chunk.getDataId(), k -> ConcurrentHashMap.newKeySet())
+                .add(chunk);
+    }
+
+    private MergeChunk release(MergeChunk chunk) {
+
+        final var refs = references.get(chunk.getDataId());
+
+        if(refs != null) {
+
+            refs.remove(chunk);
+
+            if(!refs.isEmpty())
+                return null;
+
+            references.remove(chunk.getDataId());
+
+        }
+
+        forget(chunk);
+
+        return new MergeChunk(chunk.getId(), chunk.getOffset(), chunk.getInode(), chunk.getDriveProvider(),
+                chunk.getRevision(), chunk.getSize(), chunk.isCompressed(), chunk.isEncrypted(), chunk.isFramed(), chunk.getDataId(), chunk.getHash());
+
+    }
 
-    private final HashSet<MergeNode> inodes;
-    private final HashSet<MergeChunk> chunks;
-    private final HashSet<MergeChunk> dustChunks;
-    private final HashSet<MergeNode> dustNodes;
-    private final Path cachePath;
+    private void destroy(MergeChunk orphan) {
 
+        untrack(orphan.getDataId());
 
-    public MergeStorage() {
+        getCache().remove(orphan);
+        getMemory().remove(orphan);
 
-        this.inodes = new HashSet<>();
-        this.chunks = new HashSet<>();
-        this.dustChunks = new HashSet<>();
-        this.dustNodes = new HashSet<>();
-        this.cachePath = Application.getInstance().getDataPath().resolve("cache");
+        dustData.add(orphan);
+        garbage.add(orphan);
 
     }
 
+    public void collect() {
 
-    public HashSet<MergeNode> getInodes() {
-        synchronized (inodes) {
-            return inodes;
-        }
-    }
+        if(garbage.isEmpty() || !collecting.compareAndSet(false, true))
+            return;
 
-    public HashSet<MergeChunk> getChunks() {
-        synchronized (chunks) {
-            return chunks;
-        }
-    }
 
-    public Stream<MergeNode> getInodeStream() {
-        synchronized (inodes) {
-            return Set.copyOf(inodes).stream();
+        final var now = System.currentTimeMillis();
+        final var orphans = new ArrayList<MergeChunk>();
+
+        for(var orphan : drain(garbage)) {
+
+            final var retry = retries.get(orphan.getDataId());
+
+            if(retry != null && retry.getValue() > now)
+                garbage.add(orphan);
+            else
+                orphans.add(orphan);
+
         }
-    }
 
-    public Stream<MergeChunk> getChunkStream() {
-        synchronized (chunks) {
-            return Set.copyOf(chunks).stream();
+        if(orphans.isEmpty()) {
+            collecting.set(false);
+            return;
         }
-    }
 
 
+        final var batches = orphans.stream()
+                .collect(Collectors.groupingBy(MergeChunk::getDriveProvider));
 
-    public void write(MergeChunk chunk, ByteBuffer byteBuffer, long offset, boolean raw) throws IOException {
 
-        try {
+        Application.getInstance().runThread(new Thread(() -> {
 
-            if(offset != 0L) {
+            final var latch = new CountDownLatch(orphans.size());
+            final var removed = new ConcurrentHashMap<DriveProvider, AtomicLong>();
 
-//                fileChannel = (FileChannel) Files.newByteChannel(cachePath.resolve(Path.of(chunk.getId())),
-//                        StandardOpenOption.WRITE);
+            batches.forEach((driveProvider, batch) -> {
 
-                throw new IllegalStateException("deprecated");
+                final var executor = getExecutor(driveProvider);
 
-            }
+                for(var orphan : batch) {
 
-            if(chunk.isEncrypted() && raw)
-                byteBuffer = CryptoUtils.encrypt(byteBuffer);
+                    try {
 
+                        executor.execute(() -> {
 
+                            try {
 
-            OutputStream outputStream;
+                                driveProvider.removeChunk(orphan);
 
-            if(chunk.isCompressed() && raw) {
-                outputStream = new DeflaterOutputStream(Files.newOutputStream(cachePath.resolve(chunk.getId()),
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                ), new Deflater(Application.getInstance().getConfig()
-                        .getInteger("core.mfs.compression.level")
-                        .orElse(Deflater.DEFAULT_COMPRESSION), true));
+                                retries.remove(orphan.getDataId());
 
-            } else {
-                outputStream = Files.newOutputStream(cachePath.resolve(chunk.getId()),
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                );
+                            } catch (TransferInfoTryAgainException e) {
 
-            }
+                                final var attempts = retries.containsKey(orphan.getDataId())
+                                        ? retries.get(orphan.getDataId()).getKey() + 1
+                                        : 1;
 
+                                retries.put(orphan.getDataId(), Map.entry(attempts,
+                                        System.currentTimeMillis() + Math.min(COLLECT_BACKOFF_MAX, COLLECT_BACKOFF << Math.min(attempts - 1, 16))));
 
-            while(byteBuffer.hasRemaining()) {
+                                garbage.add(orphan);
+                                return;
 
-                var bytes = new byte[Math.min(65536, byteBuffer.remaining())];
+                            } catch (TransferInfoException e) {
+                                Application.log(getClass(), e, "collect()::%s", orphan.getDataId());
+                                retries.remove(orphan.getDataId());
+                            } finally {
+                                latch.countDown();
+                            }
 
-                byteBuffer.get(bytes);
-                outputStream.write(bytes);
+                            collected.add(orphan);
+                            removed.computeIfAbsent(driveProvider, k -> new AtomicLong(0L)).incrementAndGet();
 
-            }
+                        });
 
-            outputStream.flush();
-            outputStream.close();
+                    } catch (RejectedExecutionException e) {
+                        garbage.add(orphan);
+                        latch.countDown();
+                    }
 
+                }
 
-            chunk.setRevision(Instant.now().toEpochMilli());
-            chunk.setSize(Files.size(cachePath.resolve(chunk.getId())));
-            chunk.invalidate();
+            });
 
-        } catch (IOException e) {
-            Application.log(getClass(), e,"write()");
-            throw e;
-        }
 
-    }
+            try {
 
-    public InputStream read(MergeChunk chunk, boolean raw) throws IOException {
+                latch.await();
 
-        try {
+            } catch (InterruptedException ignored) {
+            } finally {
+                collecting.set(false);
+            }
 
-            InputStream inputStream = Files.newInputStream(cachePath.resolve(chunk.getId()));
 
-            if(chunk.isCompressed() && !raw)
-                inputStream = new InflaterInputStream(inputStream, new Inflater(true));
+            removed.forEach((driveProvider, count) -> {
+                driveProvider.setChunks(driveProvider.getChunks() - count.get());
+                driveProvider.invalidate();
+            });
 
-            if(chunk.isEncrypted() && !raw)
-                inputStream = CryptoUtils.decrypt(inputStream);
+            Application.log(getClass(), "Collected %d/%d orphan chunks from %d drives",
+                    removed.values().stream().mapToLong(AtomicLong::get).sum(), orphans.size(), batches.size());
 
-            return inputStream;
+        }, "collect()"));
 
-        } catch (IOException e) {
-            Application.log(getClass(), e, "read()");
-            throw e;
-        }
+    }
+
+    private void index(MergeChunk chunk) {
+
+        if(chunk.getHash() != null)
+            hashes.putIfAbsent(chunk.getHash(), chunk.getDataId());
 
     }
 
-    public void free(MergeChunk chunk) {
+    private void forget(MergeChunk chunk) {
 
-        try {
+        if(chunk.getHash() != null)
+            hashes.remove(chunk.getHash(), chunk.getDataId());
 
-            getChunks().remove(chunk);
+    }
 
-            chunk.getInode().getChunks().remove(chunk);
-            chunk.getInode().invalidate();
+    private boolean link(MergeChunk chunk) {
 
+        MergeChunk orphan;
 
-            while(true) {
+        synchronized (references) {
 
-                try {
+            final var dataId = hashes.get(chunk.getHash());
 
-                    chunk.getDriveProvider().removeChunk(chunk);
-                    break;
+            if(dataId == null || dataId.equals(chunk.getDataId()))
+                return false;
 
-                } catch (TransferInfoTryAgainException ignored) {
-                } catch (TransferInfoException e) { break; }
+            final var refs = references.get(dataId);
 
-            }
+            if(refs == null || refs.isEmpty())
+                return false;
 
 
-            chunk.getDriveProvider().setChunks(chunk.getDriveProvider().getChunks() - 1L);
-            chunk.getDriveProvider().invalidate();
+            final var source = refs.iterator().next();
 
-            if(isCached(chunk))
-                Files.delete(cachePath.resolve(Path.of(chunk.getId())));
+            if(source.isCompressed() != chunk.isCompressed() || source.isEncrypted() != chunk.isEncrypted() || source.isFramed() != chunk.isFramed())
+                return false;
 
 
-        } catch (IOException e) {
-            Application.log(getClass(), e, "free()");
-        } finally {
-            dustChunks.add(chunk);
+            orphan = release(chunk);
+
+            chunk.setDataId(source.getDataId());
+            chunk.setDriveProvider(source.getDriveProvider());
+            chunk.setRevision(source.getRevision());
+            chunk.setSize(source.getSize());
+
+            refs.add(chunk);
+
         }
 
+
+        if(orphan != null)
+            destroy(orphan);
+
+        return true;
+
     }
 
-    public void free(MergeNode node, boolean clearData) {
+    private void unshare(MergeChunk chunk) throws IOException {
 
-        try {
+        synchronized (references) {
 
-            getInodes().remove(node);
+            final var refs = references.get(chunk.getDataId());
 
-            if(clearData) {
-                while (!node.getChunks().isEmpty())
-                    free(node.getChunks().get(0));
-            }
+            if(refs == null || refs.size() <= 1)
+                return;
+
+
+            final var dataId = IdUtils.generateId();
+            final var cached = isCached(chunk);
+            final var checksum = getCache().getChecksum(chunk.getDataId());
+
+            if(cached)
+                Files.copy(cachePath.resolve(chunk.getDataId()), cachePath.resolve(dataId));
+
+
+            refs.remove(chunk);
+
+            chunk.setDataId(dataId);
+            chunk.invalidate();
+
+            reference(chunk);
+
+            if(cached)
+                getCache().put(chunk, MergeCache.CACHE_STATE_DIRTY, checksum);
+
+            track(chunk);
+
+
+            chunk.getDriveProvider().setChunks(chunk.getDriveProvider().getChunks() + 1L);
+            chunk.getDriveProvider().invalidate();
 
-        } finally {
-            dustNodes.add(node);
         }
 
     }
 
+    public boolean isCached(MergeChunk chunk) {
+        return getCache().contains(chunk);
+    }
+
 
-    public void create(MergeNode node) {
-        getInodes().add(node);
+
+
+    public long getCurrentCacheSize() {
+        return getCache().getSize();
     }
 
+    public long getCacheLimit() {
+        return Application.getInstance().getConfig()
+                .getLong("core.mfs.cache.limit")
+                .orElse(2147483648L);
+    }
 
+    public long getMemoryLimit() {
+        return Application.getInstance().getConfig()
+                .getLong("core.mfs.cache.memory")
+                .orElse(67108864L);
+    }
 
-    public MergeChunk alloc(MergeNode node, long offset) throws IOException {
+    public long getBufferLimit() {
+        return Application.getInstance().getConfig()
+                .getLong("core.mfs.buffer.limit")
+                .orElse(67108864L);
+    }
 
-        try {
+    public boolean reserveBuffer(long bytes) {
 
-            DriveProvider driveProvider = DriveProviders.getInstance().nextAllocatable();
+        final var limit = getBufferLimit();
 
-            MergeChunk chunk = new MergeChunk(
-                    IdUtils.generateId(), offset, node, driveProvider, 0L, 0L,
-                    Application.getInstance().getConfig().getBoolean("core.mfs.compression.enable").orElse(false),
-                    Application.getInstance().getConfig().getBoolean("core.mfs.encryption.enable").orElse(false)
-            );
+        long current;
 
+        do {
 
-            getChunks().add(chunk);
-            node.getChunks().add(chunk);
+            if((current = buffered.get()) + bytes > limit)
+                return false;
 
-            driveProvider.setChunks(driveProvider.getChunks() + 1L);
-            driveProvider.invalidate();
+        } while(!buffered.compareAndSet(current, current + bytes));
 
-            chunk.invalidate();
-            return chunk;
+        return true;
 
-        } catch (DriveFullException | DriveNotFoundException e) {
-            Application.log(getClass(), e, "alloc()");
-            throw e;
-        }
+    }
 
+    public void releaseBuffer(long bytes) {
+        buffered.addAndGet(-bytes);
     }
 
+    public int getReadAheadLimit() {
 
+        final var limit = Application.getInstance().getConfig()
+                .getInteger("core.mfs.readahead.limit")
+                .orElse(8);
 
-    public boolean isCached(MergeChunk chunk) {
-        return Files.exists(cachePath.resolve(Path.of(chunk.getId())));
-    }
+        return (int) Math.max(0L, Math.min(limit, getMemoryLimit() / MergeChunk.getDefaultSize()));
 
+    }
 
+    public int getFrameSize() {
 
+        final var size = Application.getInstance().getConfig()
+                .getInteger("core.mfs.frame.size")
+                .orElse(65536);
 
-    public long getCurrentCacheSize() {
+        return Math.max(4096, size);
 
-        return getChunkStream()
-                .filter(this::isCached)
-                .mapToLong(MergeChunk::getSize)
-                .sum();
+    }
 
+    public boolean isCachePersistent() {
+        return Application.getInstance().getConfig()
+                .getBoolean("core.mfs.cache.persistent")
+                .orElse(false);
     }
 
     public void cleanCache() {
@@ -296,14 +1548,26 @@ public class MergeStorage implements ApplicationService {
 
         try {
 
-            Files.list(cachePath).forEach(p -> {
-                try {
-                    Files.delete(p);
-                } catch (IOException ignored) { }
-            });
+            Files.list(cachePath)
+                    .filter(p -> !p.getFileName().toString().equals(MergeCache.CACHE_INDEX))
+                    .filter(p -> !getCache().contains(p.getFileName().toString()))
+                    .forEach(p -> {
+                        try {
+                            Files.delete(p);
+                        } catch (IOException ignored) { }
+                    });
 
         } catch (IOException ignored) { }
 
+
+        getCache().trim(0L);
+
+
+        final var pending = getCache().getPending();
+
+        if(pending > 0L)
+            Application.log(getClass(), "Kept %d chunks pending upload in local cache, they will be uploaded after restart", pending);
+
     }
 
 
@@ -320,8 +1584,19 @@ public class MergeStorage implements ApplicationService {
         }
 
 
+        getMemory().initialize();
+
+
         try {
 
+            upgrade("chunks", "data", "TEXT");
+            upgrade("chunks", "hash", "TEXT");
+            upgrade("chunks", "framed", "INTEGER NOT NULL DEFAULT 0");
+
+            Application.getInstance().getDatabase().update(
+                    "CREATE TABLE IF NOT EXISTS garbage (id TEXT NOT NULL, drive TEXT NOT NULL, PRIMARY KEY(id))", null, false
+            );
+
             Application.getInstance().getDatabase().fetch(
                     "SELECT * FROM inodes", null,
                     r -> {
@@ -338,7 +1613,7 @@ public class MergeStorage implements ApplicationService {
                         );
 
 
-                        getInodes().add(node);
+                        getInodes().put(node.getId(), node);
 
                     }
             );
@@ -357,10 +1632,7 @@ public class MergeStorage implements ApplicationService {
 
                             final var inodeId = r.getString("inode");
 
-                            MergeNode inode = getInodeStream()
-                                    .filter(i -> i.getId().equals(inodeId))
-                                    .findFirst()
-                                    .orElse(null);
+                            MergeNode inode = getInode(inodeId);
 
                             if (inode == null)
                                 throw new NoSuchFileException(inodeId);
@@ -374,10 +1646,13 @@ public class MergeStorage implements ApplicationService {
                                     r.getLong("revision"),
                                     r.getLong("size"),
                                     r.getInt("compressed") != 0,
-                                    r.getInt("encrypted") != 0
+                                    r.getInt("encrypted") != 0,
+                                    r.getInt("framed") != 0,
+                                    Objects.requireNonNullElse(r.getString("data"), r.getString("id")),
+                                    r.getString("hash")
                             );
 
-                            getChunks().add(chunk);
+                            getChunks().put(chunk.getId(), chunk);
 
                         } catch (DriveNotFoundException | NoSuchFileException e) {
                             Application.log(getClass(), "WARNING! Chunk %s has been orphaned or invalid: %s", r.getString("id"), e.getClass().getName());
@@ -386,128 +1661,358 @@ public class MergeStorage implements ApplicationService {
                     }
             );
 
+            Application.getInstance().getDatabase().fetch(
+                    "SELECT * FROM garbage", null,
+                    r -> {
+
+                        try {
+
+                            garbage.add(new MergeChunk(
+                                    r.getString("id"), 0L, null,
+                                    DriveProviders.getInstance().fromId(r.getString("drive")),
+                                    0L, 0L, false, false, false,
+                                    r.getString("id"), null
+                            ));
+
+                        } catch (DriveNotFoundException e) {
+                            Application.log(getClass(), "WARNING! Orphan chunk %s belongs to a missing drive: %s", r.getString("id"), e.getClass().getName());
+                        }
+
+                    }
+            );
+
         } catch (SQLException e) {
             Application.panic(getClass(), e);
         }
 
 
-        getChunkStream().forEach(i ->
-                i.getInode().getChunks().add(i));
+        final var overlapping = new ArrayList<MergeChunk>();
+
+        getChunkStream().forEach(i -> {
+
+            if(!i.getInode().getChunks().add(i)) {
+
+                Application.log(getClass(), "WARNING! Chunk %s overlaps another chunk of inode %s at offset %d", i.getId(), i.getInode().getId(), i.getOffset());
+
+                overlapping.add(i);
+                return;
+
+            }
+
+            i.attach(this);
+            i.setAccounted(i.getSize(), 0L);
+
+            reference(i);
+            index(i);
+            track(i);
+
+        });
+
+        overlapping.forEach(this::free);
+
+        getInodes().values().removeIf(i -> {
+
+            if(i.getSize() > 0 && i.getChunks().isEmpty()) {
+
+                Application.log(getClass(), "WARNING! Inode %s has been corrupted or invalid", i.getId());
+                return true;
+
+            }
+
+            return false;
+
+        });
+
+        getInodeStream().forEach(i -> {
+
+            bind(i);
+            i.attach(this);
+
+        });
+
+        synchronized (rollups) {
+            getInodeStream().forEach(i -> contribute(i, 1L, false));
+        }
+
+
+        try {
+
+            getCache().load(getChunkStream()
+                    .map(MergeChunk::getDataId)
+                    .collect(Collectors.toSet()), isCachePersistent());
+
+        } catch (IOException e) {
+            Application.log(getClass(), e, "initialize()");
+        }
+
+
+        getChunkStream()
+                .filter(i -> getCache().getState(i) == MergeCache.CACHE_STATE_DIRTY)
+                .map(MergeChunk::getInode)
+                .distinct()
+                .forEach(uploads::add);
+
+        if(!uploads.isEmpty())
+            Application.log(getClass(), "Resuming upload of %d files with pending chunks", uploads.size());
+
+    }
+
+    private void resume() {
+
+        if(uploads.isEmpty())
+            return;
+
+
+        final var fileSystem = (MergeFileSystem) FileSystems.getFileSystem(URI.create("nefele:///"));
+
+        for(var node : drain(uploads)) {
+
+            if(getInode(node.getId()) != node)
+                continue;
+
+            try {
+
+                Application.getInstance().getTransferQueue().enqueue(
+                        new UploadTransferInfo((MergePath) fileSystem.getPath(fileSystem.getFileTree().toAbsolutePath(node))));
+
+            } catch (MergeFileSystemException e) {
+                Application.log(getClass(), e, "resume()");
+            }
+
+        }
+
+    }
+
+    private void upgrade(String table, String column, String definition) throws SQLException {
+
+        final var columns = new HashSet<String>();
+
+        Application.getInstance().getDatabase().fetch(
+                String.format("PRAGMA table_info(%s)", table), null,
+                r -> columns.add(r.getString("name"))
+        );
+
+        if(columns.contains(column))
+            return;
 
-        getInodes().removeAll(
-                getInodeStream()
-                        .filter(i -> i.getSize() > 0)
-                        .filter(i -> i.getChunks().isEmpty())
-                        .peek(i -> Application.log(getClass(), "WARNING! Inode %s has been corrupted or invalid", i.getId()))
-                        .collect(Collectors.toList())
+
+        Application.getInstance().getDatabase().update(
+                String.format("ALTER TABLE %s ADD COLUMN %s %s", table, column, definition), null, false
         );
 
+        Application.log(getClass(), "Upgraded table %s with column %s", table, column);
+
+    }
+
+    private static <T> List<T> drain(Queue<T> queue) {
+
+        final var items = new ArrayList<T>();
+
+        for(T item; (item = queue.poll()) != null; )
+            items.add(item);
+
+        return items;
+
     }
 
     @Override
     public void update(ApplicationTask currentTask) {
 
+        getCache().trim(getCacheLimit());
+
 
         try {
 
-            Application.getInstance().getDatabase().update (
-                    "INSERT OR REPLACE INTO inodes (name, mime, size, ctime, atime, mtime, id, parent) values (?, ?, ?, ?, ?, ?, ?, ?)",
+            final var nodes = drain(dirtyNodes);
+            final var chunks = drain(dirtyChunks);
+            final var deletedNodes = drain(dustNodes);
+            final var deletedChunks = drain(dustChunks);
+            final var orphans = drain(dustData);
+            final var removed = drain(collected);
 
-                    s -> {
 
-                        for(var node : Set.copyOf(getInodes())) {
+            if(!nodes.isEmpty()) {
 
-                            if(!node.isDirty())
-                                continue;
+                Application.getInstance().getDatabase().update (
+                        "INSERT OR REPLACE INTO inodes (name, mime, size, ctime, atime, mtime, id, parent) values (?, ?, ?, ?, ?, ?, ?, ?)",
 
-                            s.setString(1, node.getName());
-                            s.setString(2, node.getMime());
-                            s.setLong(3, node.getSize());
-                            s.setLong(4, node.getCreatedTime().getEpochSecond());
-                            s.setLong(5, node.getAccessedTime().getEpochSecond());
-                            s.setLong(6, node.getModifiedTime().getEpochSecond());
-                            s.setString(7, node.getId());
-                            s.setString(8, node.getParent());
-                            s.addBatch();
+                        s -> {
 
-                            node.validate();
+                            for(var node : nodes) {
 
-                        }
+                                node.dequeue();
+                                node.validate();
 
-                    }, true
-            );
+                                if(getInode(node.getId()) != node)
+                                    continue;
 
+                                s.setString(1, node.getName());
+                                s.setString(2, node.getMime());
+                                s.setLong(3, node.getSize());
+                                s.setLong(4, node.getCreatedTime().getEpochSecond());
+                                s.setLong(5, node.getAccessedTime().getEpochSecond());
+                                s.setLong(6, node.getModifiedTime().getEpochSecond());
+                                s.setString(7, node.getId());
+                                s.setString(8, node.getParent());
+                                s.addBatch();
 
-            Application.getInstance().getDatabase().update (
-                    "INSERT OR REPLACE INTO chunks (id, offset, inode, drive, revision, size, compressed, encrypted) values (?, ?, ?, ?, ?, ?, ?, ?)",
+                            }
 
-                    s -> {
+                        }, true
+                );
 
-                        for(var chunk : Set.copyOf(getChunks())) {
+            }
 
-                            if(!chunk.isDirty())
-                                continue;
 
-                            s.setString(1, chunk.getId());
-                            s.setLong(2, chunk.getOffset());
-                            s.setString(3, chunk.getInode().getId());
-                            s.setString(4, chunk.getDriveProvider().getId());
-                            s.setLong(5, chunk.getRevision());
-                            s.setLong(6, chunk.getSize());
-                            s.setInt(7, chunk.isCompressed() ? 1 : 0);
-                            s.setInt(8, chunk.isEncrypted() ? 1 : 0);
-                            s.addBatch();
+            if(!chunks.isEmpty()) {
 
-                            chunk.validate();
+                Application.getInstance().getDatabase().update (
+                        "INSERT OR REPLACE INTO chunks (id, offset, inode, drive, revision, size, compressed, encrypted, data, hash, framed) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
 
-                        }
+                        s -> {
 
-                    }, true
-            );
+                            for(var chunk : chunks) {
 
+                                chunk.dequeue();
+                                chunk.validate();
 
-            Application.getInstance().getDatabase().update (
-                    "DELETE FROM inodes WHERE id = ?",
+                                if(getChunk(chunk.getId()) != chunk)
+                                    continue;
 
-                    s -> {
+                                s.setString(1, chunk.getId());
+                                s.setLong(2, chunk.getOffset());
+                                s.setString(3, chunk.getInode().getId());
+                                s.setString(4, chunk.getDriveProvider().getId());
+                                s.setLong(5, chunk.getRevision());
+                                s.setLong(6, chunk.getSize());
+                                s.setInt(7, chunk.isCompressed() ? 1 : 0);
+                                s.setInt(8, chunk.isEncrypted() ? 1 : 0);
+                                s.setString(9, chunk.getDataId());
+                                s.setString(10, chunk.getHash());
+                                s.setInt(11, chunk.isFramed() ? 1 : 0);
+                                s.addBatch();
 
-                        for(var node : Set.copyOf(dustNodes)) {
+                            }
 
-                            s.setString(1, node.getId());
-                            s.addBatch();
+                        }, true
+                );
 
-                        }
+            }
 
-                    }, true
-            );
 
+            if(!deletedNodes.isEmpty()) {
 
-            Application.getInstance().getDatabase().update (
-                    "DELETE FROM chunks WHERE id = ?",
+                Application.getInstance().getDatabase().update (
+                        "DELETE FROM inodes WHERE id = ?",
 
-                    s -> {
+                        s -> {
 
-                        for(var chunk : Set.copyOf(dustChunks)) {
+                            for(var node : deletedNodes) {
 
-                            s.setString(1, chunk.getId());
-                            s.addBatch();
+                                s.setString(1, node.getId());
+                                s.addBatch();
 
-                        }
+                            }
 
-                    }, true
-            );
+                        }, true
+                );
+
+            }
+
+
+            if(!deletedChunks.isEmpty()) {
+
+                Application.getInstance().getDatabase().update (
+                        "DELETE FROM chunks WHERE id = ?",
+
+                        s -> {
+
+                            for(var chunk : deletedChunks) {
+
+                                s.setString(1, chunk.getId());
+                                s.addBatch();
+
+                            }
+
+                        }, true
+                );
+
+            }
+
+
+            if(!orphans.isEmpty()) {
+
+                Application.getInstance().getDatabase().update (
+                        "INSERT OR REPLACE INTO garbage (id, drive) values (?, ?)",
+
+                        s -> {
+
+                            for(var orphan : orphans) {
+
+                                s.setString(1, orphan.getDataId());
+                                s.setString(2, orphan.getDriveProvider().getId());
+                                s.addBatch();
+
+                            }
+
+                        }, true
+                );
+
+            }
+
+
+            if(!removed.isEmpty()) {
+
+                Application.getInstance().getDatabase().update (
+                        "DELETE FROM garbage WHERE id = ?",
+
+                        s -> {
+
+                            for(var orphan : removed) {
+
+                                s.setString(1, orphan.getDataId());
+                                s.addBatch();
+
+                            }
+
+                        }, true
+                );
+
+            }
 
         } catch (SQLException e) {
             Application.panic(getClass(), e);
         }
 
+
+        if(currentTask != null) {
+            resume();
+            collect();
+        }
+
     }
 
     @Override
     public void close() {
 
+        workers.values().forEach(ThreadPoolExecutor::shutdownNow);
+        workers.clear();
+
         update(null);
-        cleanCache();
+
+        if(isCachePersistent()) {
+
+            try {
+                getCache().save();
+            } catch (IOException e) {
+                Application.log(getClass(), e, "close()");
+                cleanCache();
+            }
+
+        } else
+            cleanCache();
+
+        getMemory().clear();
 
     }
 
@@ -320,6 +320,28 @@ public class Settings extends StackPane implements Initializable, Themeable {
         ));
 
 
+        getRecords().add(new SettingsRecord("core.mfs.cache.persistent", "SETTINGS_CACHE_PERSISTENT", "SETTINGS_CACHE_PERSISTENT_DESCRIPTION",
+                new JFXToggleButton() {{
+
+                    this.setSelected(Application.getInstance().getConfig().getBoolean("core.mfs.cache.persistent").orElse(false));
+                    this.setSize(8.0);
+
+
+                    this.selectedProperty().addListener((v, o, n) ->
+
+                        Application.getInstance().runThread(new Thread(() -> {
+
+                            Application.getInstance().getConfig().setBoolean("core.mfs.cache.persistent", n);
+                            Application.getInstance().getConfig().update(null);
+
+                        }, "updateSettings()::core.mfs.cache.persistent"))
+
+                    );
+
+                }}
+        ));
+
+
         getRecords().add(new SettingsRecord("core.transfers.parallel", "SETTINGS_TRANSFERS", "SETTINGS_TRANSFERS_DESCRIPTION",
                 new JFXSlider(1.0, 32.0, Application.getInstance().getConfig().getInteger("core.transfers.parallel").orElse(4).doubleValue()) {{
 
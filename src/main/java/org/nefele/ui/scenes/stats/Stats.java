@@ -54,7 +54,6 @@ import java.net.URL;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.util.ResourceBundle;
 import java.util.concurrent.TimeUnit;
 
@@ -258,16 +257,11 @@ public class Stats extends StackPane implements Initializable, Themeable {
 
 
                 labelAllFilesNum.textProperty().bind(Bindings.createStringBinding(() ->
-                        String.valueOf(Files.walk(fileSystem.getPath(MergeFileSystem.ROOT))
-                                .filter(Files::isRegularFile)
-                                .count())));
+                        String.valueOf(fileSystem.getFileTree().getRollup().getFiles())));
 
 
                 labelAllFilesDim.textProperty().bind(BindingsUtils.createSizeBinding(() ->
-                        Files.walk(fileSystem.getPath(MergeFileSystem.ROOT))
-                                .filter(Files::isRegularFile)
-                                .mapToLong(i -> i.toFile().length())
-                                .sum(), ""
+                        fileSystem.getFileTree().getRollup().getSize(), ""
                 ));
 
 
@@ -275,15 +269,10 @@ public class Stats extends StackPane implements Initializable, Themeable {
 
 
                 labelAllFoldersNum.textProperty().bind(Bindings.createStringBinding(() ->
-                        String.valueOf(Files.walk(fileSystem.getPath(MergeFileSystem.ROOT))
-                                .filter(Files::isDirectory)
-                                .count() - 1 )));
+                        String.valueOf(fileSystem.getFileTree().getRollup().getFolders())));
 
                 labelAllFoldersDim.textProperty().bind(BindingsUtils.createSizeBinding(() ->
-                        Files.walk(fileSystem.getPath(MergeFileSystem.ROOT))
-                                .filter(Files::isDirectory)
-                                .mapToLong(i -> i.toFile().length())
-                                .sum(), ""
+                        fileSystem.getFileTree().getRollup().getFolderSize(), ""
                 ));
 
 
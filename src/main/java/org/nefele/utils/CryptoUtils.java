@@ -41,6 +41,7 @@ import static java.util.Objects.requireNonNull;
 public final class CryptoUtils {
 
     private final static String DEFAULT_ALGORITHM = "AES/ECB/PKCS5Padding";
+    private final static String DEFAULT_HASH_ALGORITHM = "SHA-256";
     private static SecretKey secretKey = null;
 
 
@@ -127,6 +128,40 @@ public final class CryptoUtils {
 
     }
 
+    public static ByteBuffer decrypt(ByteBuffer byteBuffer) {
+
+        requireNonNull(secretKey, "CryptoUtils not initialized!");
+
+
+        if(!byteBuffer.hasRemaining())
+            return byteBuffer;
+
+        try {
+
+            Cipher cipher = Cipher.getInstance(Application.getInstance().getConfig()
+                    .getString("core.mfs.encryption.algorithm")
+                    .orElse(DEFAULT_ALGORITHM));
+
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(new byte[cipher.getBlockSize()]));
+
+
+            final var outputSize = cipher.getOutputSize(byteBuffer.remaining());
+
+            ByteBuffer outputBuffer = ByteBuffer
+                    .allocate(outputSize);
+
+            cipher.doFinal(byteBuffer, outputBuffer);
+            return outputBuffer.flip();
+
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException | IllegalBlockSizeException | ShortBufferException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+            Application.panic(CryptoUtils.class, e);
+        }
+
+
+        throw new IllegalStateException();
+
+    }
+
     public static InputStream decrypt(InputStream inputStream) {
 
         requireNonNull(secretKey, "CryptoUtils not initialized!");
@@ -158,6 +193,30 @@ public final class CryptoUtils {
         }
 
 
+        throw new IllegalStateException();
+
+    }
+
+    public static String hash(ByteBuffer byteBuffer) {
+
+        try {
+
+            MessageDigest messageDigest = MessageDigest.getInstance(DEFAULT_HASH_ALGORITHM);
+            messageDigest.update(byteBuffer.duplicate());
+
+
+            StringBuilder hash = new StringBuilder();
+
+            for(byte b : messageDigest.digest())
+                hash.append(String.format("%02x", b));
+
+            return hash.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            Application.panic(CryptoUtils.class, e);
+        }
+
+
         throw new IllegalStateException();
 
     }